@@ -0,0 +1,179 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Per-image automatic thresholds. The key histogram is built on the engine's pool
+// (Parralel_segmenter.keyHistogram, private per-leaf histograms summed on join), Otsu's method
+// picks the split that maximises the between-class variance, and the resulting kernel is an
+// ordinary LUT kernel, so the segmentation pass itself costs the same as a fixed threshold.
+// Large images are histogrammed on evenly spaced rows only (about SAMPLE_PIXELS pixels): the
+// threshold barely moves, and choosing it costs a small fraction of the segmentation pass.
+//
+// Threshold fields and --threshold options accept "auto" (Otsu, two classes) or "auto:N"
+// (multi-level Otsu with N classes, grayscale only, rendered as N evenly spaced grays).
+public final class AutoThreshold {
+    public static final String AUTO = "auto";
+    public static final int MAX_CLASSES = 8;
+    static final long SAMPLE_PIXELS = 1 << 20;
+
+    private AutoThreshold() {
+    }
+
+    // Number of classes requested by "auto" / "auto:N", or 0 when the text is not an auto threshold.
+    public static int parseClasses(String text) {
+        String value = text.trim().toLowerCase(Locale.ROOT);
+        if (value.equals(AUTO)) {
+            return 2;
+        }
+        if (!value.startsWith(AUTO + ":")) {
+            return 0;
+        }
+        int classes;
+        try {
+            classes = Integer.parseInt(value.substring(AUTO.length() + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid threshold: " + text);
+        }
+        if (classes < 2 || classes > MAX_CLASSES) {
+            throw new IllegalArgumentException("Auto threshold classes must be 2-" + MAX_CLASSES + ": " + text);
+        }
+        return classes;
+    }
+
+    public static boolean isAuto(String text) {
+        return parseClasses(text) > 0;
+    }
+
+    // Otsu's threshold: the smallest key of the upper class.
+    public static int otsu(long[] histogram) {
+        return multiOtsu(histogram, 2)[0];
+    }
+
+    // Multi-level Otsu: the classes - 1 keys at which classes 1..classes-1 start, ascending,
+    // chosen to maximise the between-class variance. Maximising the sum over classes of
+    // (sum of keys)^2 / count is equivalent and needs only prefix sums; a dynamic programme
+    // over the 256 keys finds the optimum in O(classes * 256^2).
+    public static int[] multiOtsu(long[] histogram, int classes) {
+        int keys = histogram.length;
+        if (classes < 2 || classes > keys) {
+            throw new IllegalArgumentException("Classes must be 2-" + keys + ": " + classes);
+        }
+        double[] count = new double[keys + 1];
+        double[] sum = new double[keys + 1];
+        for (int k = 0; k < keys; k++) {
+            count[k + 1] = count[k] + histogram[k];
+            sum[k + 1] = sum[k] + (double) k * histogram[k];
+        }
+
+        // best[c][j]: best score splitting keys [0, j) into c + 1 non-empty key ranges
+        double[][] best = new double[classes][keys + 1];
+        int[][] from = new int[classes][keys + 1];
+        for (int j = 1; j <= keys; j++) {
+            best[0][j] = score(count, sum, 0, j);
+        }
+        for (int c = 1; c < classes; c++) {
+            Arrays.fill(best[c], Double.NEGATIVE_INFINITY);
+            for (int j = c + 1; j <= keys; j++) {
+                for (int i = c; i < j; i++) {
+                    double value = best[c - 1][i] + score(count, sum, i, j);
+                    if (value > best[c][j]) {
+                        best[c][j] = value;
+                        from[c][j] = i;
+                    }
+                }
+            }
+        }
+
+        int[] starts = new int[classes - 1];
+        int j = keys;
+        for (int c = classes - 1; c >= 1; c--) {
+            j = from[c][j];
+            starts[c - 1] = j;
+        }
+        return starts;
+    }
+
+    // Between-class variance contribution of keys [i, j)
+    private static double score(double[] count, double[] sum, int i, int j) {
+        double n = count[j] - count[i];
+        if (n == 0) {
+            return 0;
+        }
+        double s = sum[j] - sum[i];
+        return s * s / n;
+    }
+
+    // The kernel threshold that makes exactly the keys >= split foreground
+    static int thresholdFor(SegmentationKernel kernel, int split) {
+        // Grayscale keeps key >= threshold, a dominant channel key > threshold
+        return (kernel instanceof SegmentationKernels.Grayscale) ? split : split - 1;
+    }
+
+    // The kernel an automatic threshold resolved to for one image
+    public static final class Choice {
+        private final SegmentationKernel kernel;
+        private final int[] thresholds;
+        private final long histogramNanos;
+
+        Choice(SegmentationKernel kernel, int[] thresholds, long histogramNanos) {
+            this.kernel = kernel;
+            this.thresholds = thresholds;
+            this.histogramNanos = histogramNanos;
+        }
+
+        // Scalar kernel; pass it through VectorSegmenter.vectorize() for the SIMD engine
+        public SegmentationKernel kernel() {
+            return kernel;
+        }
+
+        // The chosen threshold, or the class boundaries for a multi-level choice
+        public int[] thresholds() {
+            return thresholds.clone();
+        }
+
+        public long histogramNanos() {
+            return histogramNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s (histogram %.2f ms)",
+                    (thresholds.length == 1) ? "Otsu threshold" : "Multi-Otsu thresholds",
+                    (thresholds.length == 1) ? String.valueOf(thresholds[0]) : Arrays.toString(thresholds),
+                    histogramNanos / 1e6);
+        }
+    }
+
+    // Throws IllegalArgumentException unless the type can take an automatic threshold with this
+    // many classes; returns a kernel of the type for probing its key.
+    public static SegmentationKernel checkType(String type, int classes) {
+        SegmentationKernel probe = SegmentationKernels.forType(type, 0);
+        if (!ThresholdIndex.supports(probe)) {
+            throw new IllegalArgumentException("Type '" + type + "' does not use a threshold; auto is not available");
+        }
+        if (classes > 2 && !(probe instanceof SegmentationKernels.Grayscale)) {
+            throw new IllegalArgumentException("Multi-level thresholds are only available for grayscale");
+        }
+        return probe;
+    }
+
+    // Builds the image's key histogram on the engine and resolves the type to a kernel at the
+    // Otsu threshold, or to a GrayLevels kernel for more than two classes.
+    public static Choice choose(Parralel_segmenter engine, BufferedImage input, String type, int classes,
+                                Decomposition decomposition) {
+        SegmentationKernel probe = checkType(type, classes);
+        long start = System.nanoTime();
+        int rowStep = (int) Math.max(1, (long) input.getWidth() * input.getHeight() / SAMPLE_PIXELS);
+        long[] histogram = engine.keyHistogram(input, probe, decomposition, rowStep);
+        long nanos = System.nanoTime() - start;
+
+        int[] splits = multiOtsu(histogram, classes);
+        if (classes > 2) {
+            return new Choice(new SegmentationKernels.GrayLevels(splits), splits, nanos);
+        }
+        int threshold = thresholdFor(probe, splits[0]);
+        return new Choice(SegmentationKernels.forType(type, threshold), new int[]{threshold}, nanos);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,421 @@
+package Project;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless batch runner: decode -> segment -> encode as three overlapping stages connected by
+// bounded queues. Full queues block the stage upstream (backpressure), so memory stays bounded
+// by the queue capacities while I/O and CPU work proceed in parallel.
+//
+// Usage: BatchSegmenter <input dir or glob> <output dir> [--type grayscale|kmeans(k)] [--threshold 128|auto|auto:N]
+//        [--threads N] [--decoders N] [--encoders N] [--inflight N] [--queue N] [--format png] [--simd] [--mask [--cleanup open:1]] [--cache-mb N] [--cache-dir DIR]
+// With --mask only the 1-bit foreground mask is produced and written (as a 1-bit image);
+// --cleanup open:1 (close, erode, dilate; :radius) cleans it in the same pass (see Morphology).
+// --threshold auto picks an Otsu threshold per image (auto:N a multi-level one, grayscale only).
+// --type kmeans(k) fits k colours per image and ignores the threshold.
+// --cache-mb N keeps results of up to N MB in memory, so duplicate inputs are segmented once;
+// --cache-dir DIR also keeps masks on disk, so a re-run with the same options skips them (see ResultCache).
+public class BatchSegmenter {
+    private static final Item END = new Item(null, null, null);
+
+    private final Options options;
+    private final SegmentationKernel kernel;
+    private final Parralel_segmenter engine;
+    private final ResultCache cache;   // null without --cache-mb / --cache-dir
+    private final String cacheVariant; // the options that determine an image's result
+    private final int[] outputPalette; // colours of every image's output, null if it keeps colours
+    private final ConcurrentLinkedQueue<Path> pending;
+    private final BlockingQueue<Item> decoded;
+    private final BlockingQueue<Item> segmented;
+
+    private final AtomicInteger decodersLeft;
+    private final AtomicInteger segmentersLeft;
+    private final AtomicLong decodedCount = new AtomicLong();
+    private final AtomicLong segmentedCount = new AtomicLong();
+    private final AtomicLong encodedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong cachedCount = new AtomicLong();
+
+    // An image moving through the pipeline
+    private static final class Item {
+        private final Path source;
+        private final BufferedImage input;
+        private final BufferedImage output;
+
+        Item(Path source, BufferedImage input, BufferedImage output) {
+            this.source = source;
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    private static final class Options {
+        private String input;
+        private String outputDir;
+        private String type = "grayscale";
+        private int threshold = 128;
+        private int autoClasses; // 0 for a fixed threshold
+        private int kmeansK;     // k of a kmeans(k) type, else 0
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int decoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private int inflight = 2; // images segmented concurrently on the shared pool
+        private int queueCapacity = 8;
+        private String format = "png";
+        private boolean simd;
+        private boolean mask;
+        private Morphology cleanup; // null for none; --mask only
+        private long cacheBytes = -1; // -1 without --cache-mb
+        private Path cacheDir;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            List<String> positional = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    positional.add(arg);
+                    continue;
+                }
+                if (arg.equals("--simd")) {
+                    options.simd = true;
+                    continue;
+                }
+                if (arg.equals("--mask")) {
+                    options.mask = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--type" -> options.type = value;
+                    case "--threshold" -> {
+                        options.autoClasses = AutoThreshold.parseClasses(value);
+                        if (options.autoClasses == 0) {
+                            options.threshold = Integer.parseInt(value);
+                        }
+                    }
+                    case "--threads" -> options.threads = Integer.parseInt(value);
+                    case "--decoders" -> options.decoders = Integer.parseInt(value);
+                    case "--encoders" -> options.encoders = Integer.parseInt(value);
+                    case "--inflight" -> options.inflight = Integer.parseInt(value);
+                    case "--queue" -> options.queueCapacity = Integer.parseInt(value);
+                    case "--format" -> options.format = value;
+                    case "--cleanup" -> options.cleanup = Morphology.parse(value);
+                    case "--cache-mb" -> options.cacheBytes = Long.parseLong(value) * 1024 * 1024;
+                    case "--cache-dir" -> options.cacheDir = Paths.get(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (positional.size() != 2) {
+                throw new IllegalArgumentException("Expected <input dir or glob> <output dir>");
+            }
+            options.input = positional.get(0);
+            options.outputDir = positional.get(1);
+            if (options.threads < 1 || options.decoders < 1 || options.encoders < 1
+                    || options.inflight < 1 || options.queueCapacity < 1) {
+                throw new IllegalArgumentException("Thread, in-flight and queue counts must be at least 1");
+            }
+            if (options.cleanup != null && !options.mask) {
+                throw new IllegalArgumentException("--cleanup needs --mask");
+            }
+            if (options.cacheBytes < -1) {
+                throw new IllegalArgumentException("--cache-mb must not be negative");
+            }
+            options.kmeansK = KMeansSegmentation.parseK(options.type);
+            if (options.kmeansK > 0) {
+                // Validates k
+                new KMeansSegmentation(options.kmeansK);
+            } else if (options.autoClasses > 0) {
+                // Fail on the command line rather than once per image
+                AutoThreshold.checkType(options.type, options.autoClasses);
+            }
+            return options;
+        }
+
+        String thresholdText() {
+            return (kmeansK > 0) ? "unused"
+                    : (autoClasses == 0) ? String.valueOf(threshold)
+                    : (autoClasses == 2) ? AutoThreshold.AUTO : AutoThreshold.AUTO + ":" + autoClasses;
+        }
+    }
+
+    private BatchSegmenter(Options options, List<Path> files) {
+        this.options = options;
+        // Per-image kernels (auto threshold, k-means) are resolved in segmentLoop
+        SegmentationKernel kernel = (options.kmeansK > 0) ? null : SegmentationKernels.forType(options.type, options.threshold);
+        this.kernel = (options.simd && kernel != null) ? VectorSegmenter.vectorize(kernel) : kernel;
+        this.engine = Parralel_segmenter.shared(options.threads);
+        if (options.cacheBytes >= 0 || options.cacheDir != null) {
+            this.cache = new ResultCache((options.cacheBytes >= 0) ? options.cacheBytes : ResultCache.DEFAULT_MAX_BYTES, options.cacheDir);
+        } else {
+            this.cache = null;
+        }
+        // Keyed on the options rather than the resolved kernel, so a hit also skips choosing an
+        // automatic threshold or fitting k-means
+        this.cacheVariant = String.format(Locale.ROOT, "batch:%s:%s:%s%s%s", options.mask ? "mask" : "argb",
+                options.type, options.thresholdText(), options.simd ? ":simd" : "",
+                (options.cleanup == null) ? "" : "+" + options.cleanup);
+        // Known before the per-image kernels are: automatic thresholds only move the threshold,
+        // and k-means colours are fitted per image
+        if (options.kmeansK > 0) {
+            this.outputPalette = null;
+        } else if (options.autoClasses > 2) {
+            this.outputPalette = new SegmentationKernels.GrayLevels(new int[options.autoClasses - 1]).outputPalette();
+        } else {
+            this.outputPalette = kernel.outputPalette();
+        }
+        this.pending = new ConcurrentLinkedQueue<>(files);
+        this.decoded = new ArrayBlockingQueue<>(options.queueCapacity);
+        this.segmented = new ArrayBlockingQueue<>(options.queueCapacity);
+        this.decodersLeft = new AtomicInteger(options.decoders);
+        this.segmentersLeft = new AtomicInteger(options.inflight);
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        List<Path> files;
+        try {
+            options = Options.parse(args);
+            files = listInputs(options.input);
+            Files.createDirectories(Paths.get(options.outputDir));
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: BatchSegmenter <input dir or glob> <output dir> [--type grayscale|kmeans(k)] [--threshold 128|auto|auto:N]"
+                    + " [--threads N] [--decoders N] [--encoders N] [--inflight N] [--queue N] [--format png] [--simd] [--mask [--cleanup open:1]] [--cache-mb N] [--cache-dir DIR]");
+            System.exit(2);
+            return;
+        }
+        if (files.isEmpty()) {
+            System.err.println("No input images match " + options.input);
+            System.exit(1);
+        }
+
+        System.out.printf("Segmenting %d images (%s, threshold %s) with %d threads, %d decoders, %d encoders%n",
+                files.size(), options.type, options.thresholdText(), options.threads, options.decoders, options.encoders);
+        long failed = new BatchSegmenter(options, files).run();
+        Parralel_segmenter.closeShared();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    // Runs the pipeline to completion and returns the number of images that failed.
+    private long run() {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.decoders; i++) {
+            threads.add(new Thread(this::decodeLoop, "batch-decoder-" + (i + 1)));
+        }
+        for (int i = 0; i < options.inflight; i++) {
+            threads.add(new Thread(this::segmentLoop, "batch-segmenter-" + (i + 1)));
+        }
+        for (int i = 0; i < options.encoders; i++) {
+            threads.add(new Thread(this::encodeLoop, "batch-encoder-" + (i + 1)));
+        }
+
+        long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "batch-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> report(start, false), 1, 1, TimeUnit.SECONDS);
+
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Batch run interrupted.");
+                break;
+            }
+        }
+        reporter.shutdownNow();
+        report(start, true);
+        if (cache != null) {
+            System.out.printf(Locale.ROOT, "Result cache: %d images served from cache; %s%n", cachedCount.get(), cache.stats());
+        }
+        return failedCount.get();
+    }
+
+    private void decodeLoop() {
+        try {
+            Path path;
+            while ((path = pending.poll()) != null) {
+                try {
+                    BufferedImage input = ImageIO.read(path.toFile());
+                    if (input == null) {
+                        throw new IOException("unsupported image format");
+                    }
+                    // Recycled once encoded, in the narrowest type the kernel needs (see RasterPool)
+                    BufferedImage output = options.mask ? null : RasterPool.shared().acquire(input, outputPalette);
+                    decoded.put(new Item(path, input, output));
+                    decodedCount.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    fail(path, "decode", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (decodersLeft.decrementAndGet() == 0) {
+                signalEnd(decoded, options.inflight);
+            }
+        }
+    }
+
+    private void segmentLoop() {
+        try {
+            Item item;
+            while ((item = decoded.take()) != END) {
+                try {
+                    BufferedImage output = item.output;
+                    ResultCache.Key key = (cache == null) ? null : cache.key(engine, item.input, cacheVariant);
+                    if (key != null && (options.mask ? (output = cachedMask(key)) != null : cache.getImage(key, output))) {
+                        cache.forget(item.input);
+                        segmented.put(new Item(item.source, null, output));
+                        segmentedCount.incrementAndGet();
+                        cachedCount.incrementAndGet();
+                        continue;
+                    }
+                    SegmentationKernel kernel = this.kernel;
+                    if (options.kmeansK > 0) {
+                        kernel = new KMeansSegmentation(options.kmeansK).fit(engine, item.input, Decomposition.adaptive()).kernel();
+                    } else if (options.autoClasses > 0) {
+                        kernel = AutoThreshold.choose(engine, item.input, options.type, options.autoClasses, Decomposition.adaptive()).kernel();
+                        if (options.simd) {
+                            kernel = VectorSegmenter.vectorize(kernel);
+                        }
+                    }
+                    if (options.mask) {
+                        BinaryMask mask = engine.segmentMask(item.input, kernel, Decomposition.adaptive(), options.cleanup);
+                        if (key != null) {
+                            cache.putMask(key, mask);
+                        }
+                        output = mask.toImage(0xFFFFFF, 0x000000);
+                    } else {
+                        engine.segment(item.input, output, kernel, null, 0, Decomposition.adaptive());
+                        if (key != null) {
+                            cache.putImage(key, output);
+                        }
+                    }
+                    if (key != null) {
+                        // Decoded images are not kept, so neither is their hash
+                        cache.forget(item.input);
+                    }
+                    segmented.put(new Item(item.source, null, output));
+                    segmentedCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    fail(item.source, "segment", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (segmentersLeft.decrementAndGet() == 0) {
+                signalEnd(segmented, options.encoders);
+            }
+        }
+    }
+
+    private BufferedImage cachedMask(ResultCache.Key key) {
+        BinaryMask mask = cache.getMask(key);
+        return (mask == null) ? null : mask.toImage(0xFFFFFF, 0x000000);
+    }
+
+    private void encodeLoop() {
+        try {
+            Item item;
+            while ((item = segmented.take()) != END) {
+                File target = outputFileFor(item.source);
+                try {
+                    if (!ImageIO.write(item.output, options.format, target)) {
+                        throw new IOException("no writer for format " + options.format);
+                    }
+                    encodedCount.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    fail(item.source, "encode", e);
+                } finally {
+                    if (!options.mask) {
+                        RasterPool.shared().release(item.output);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void signalEnd(BlockingQueue<Item> queue, int consumers) {
+        try {
+            for (int i = 0; i < consumers; i++) {
+                queue.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(Path source, String stage, Exception e) {
+        failedCount.incrementAndGet();
+        System.err.println("Failed to " + stage + " " + source + ": " + e.getMessage());
+    }
+
+    private File outputFileFor(Path source) {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = (dot > 0) ? name.substring(0, dot) : name;
+        return new File(options.outputDir, base + "." + options.format);
+    }
+
+    private void report(long start, boolean last) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long done = encodedCount.get();
+        System.out.printf(Locale.ROOT, "%s%.1fs: %d/%d/%d decoded/segmented/encoded, %d failed, %.1f images/sec, queues decoded=%d segmented=%d%n",
+                last ? "Done in " : "", seconds, decodedCount.get(), segmentedCount.get(), done, failedCount.get(),
+                done / Math.max(seconds, 1e-9), decoded.size(), segmented.size());
+    }
+
+    // A directory lists its image files; anything else is treated as a glob such as photos/*.jpg.
+    private static List<Path> listInputs(String input) throws IOException {
+        Path path = Paths.get(input);
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.{jpg,jpeg,png,bmp,gif,tif,tiff}")) {
+                stream.forEach(files::add);
+            }
+        } else {
+            Path dir = path.toAbsolutePath().getParent();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path candidate : stream) {
+                    if (Files.isRegularFile(candidate) && matcher.matches(candidate.getFileName())) {
+                        files.add(candidate);
+                    }
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+// One bit per pixel segmentation result: bit x of row y is set when the kernel marked that
+// pixel as foreground. Rows start on a fresh long so parallel tasks owning different rows,
+// or different 64-pixel column blocks, never write the same word. Bit indices (bitIndex(),
+// SegmentationKernel.maskRow) are ints, so a mask holds at most 2^31 bits, row padding included.
+public final class BinaryMask {
+    private static final long MAX_WORDS = 1L << 25;
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    public BinaryMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        if ((long) wordsPerRow * height > MAX_WORDS) {
+            throw new IllegalArgumentException("Mask too large: " + width + "x" + height
+                    + " needs more than 2^31 bits");
+        }
+        this.bits = new long[wordsPerRow * height];
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int wordsPerRow() {
+        return wordsPerRow;
+    }
+
+    // Backing words; bit (x & 63) of bits[y * wordsPerRow + (x >>> 6)] is pixel (x, y).
+    public long[] bits() {
+        return bits;
+    }
+
+    // Absolute bit index of pixel (x, y), as passed to SegmentationKernel.maskRow.
+    int bitIndex(int x, int y) {
+        return (y * wordsPerRow << 6) + x;
+    }
+
+    public boolean get(int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public void set(int x, int y, boolean value) {
+        int word = y * wordsPerRow + (x >>> 6);
+        if (value) {
+            bits[word] |= 1L << x;
+        } else {
+            bits[word] &= ~(1L << x);
+        }
+    }
+
+    public long countForeground() {
+        long count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    // Two-colour TYPE_BYTE_BINARY image for display; packed straight from the words.
+    public BufferedImage toImage(int foregroundRgb, int backgroundRgb) {
+        byte[] r = {(byte) (backgroundRgb >> 16), (byte) (foregroundRgb >> 16)};
+        byte[] g = {(byte) (backgroundRgb >> 8), (byte) (foregroundRgb >> 8)};
+        byte[] b = {(byte) backgroundRgb, (byte) foregroundRgb};
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(1, 2, r, g, b));
+
+        WritableRaster raster = image.getRaster();
+        int stride = ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int bytesPerRow = (width + 7) >>> 3;
+        for (int y = 0; y < height; y++) {
+            int word = y * wordsPerRow;
+            int out = y * stride;
+            for (int i = 0; i < bytesPerRow; i++) {
+                int bits8 = (int) (this.bits[word + (i >>> 3)] >>> ((i & 7) << 3)) & 0xFF;
+                // Masks are LSB-first, TYPE_BYTE_BINARY is MSB-first
+                data[out + i] = (byte) (Integer.reverse(bits8) >>> 24);
+            }
+            int tail = width & 7;
+            if (tail != 0) {
+                data[out + bytesPerRow - 1] &= (byte) (0xFF00 >>> tail);
+            }
+        }
+        return image;
+    }
+
+    public RunLengths toRunLengths() {
+        int[] rowStart = new int[height + 1];
+        int[] runs = new int[16];
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            rowStart[y] = count;
+            int base = y * wordsPerRow;
+            int x = 0;
+            boolean foreground = false;
+            // Alternating run lengths, starting with background (possibly a zero-length run)
+            while (x < width) {
+                int end = nextChange(base, x, foreground);
+                if (count == runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[count++] = end - x;
+                x = end;
+                foreground = !foreground;
+            }
+        }
+        rowStart[height] = count;
+        return new RunLengths(width, height, rowStart, Arrays.copyOf(runs, count));
+    }
+
+    // First x >= from whose bit differs from `foreground`, or width.
+    private int nextChange(int base, int from, boolean foreground) {
+        int wordIndex = from >>> 6;
+        // 1 wherever the pixel differs from the current run
+        long word = foreground ? ~bits[base + wordIndex] : bits[base + wordIndex];
+        word &= -1L << from; // ignore bits before `from`
+        while (word == 0) {
+            if (++wordIndex >= wordsPerRow) {
+                return width;
+            }
+            word = foreground ? ~bits[base + wordIndex] : bits[base + wordIndex];
+        }
+        return Math.min(width, (wordIndex << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    // Row-wise run-length encoding of a mask: runs[rowStart[y] .. rowStart[y + 1]) alternate
+    // background and foreground lengths, always starting with background.
+    public static final class RunLengths {
+        private final int width;
+        private final int height;
+        private final int[] rowStart;
+        private final int[] runs;
+
+        RunLengths(int width, int height, int[] rowStart, int[] runs) {
+            this.width = width;
+            this.height = height;
+            this.rowStart = rowStart;
+            this.runs = runs;
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public int height() {
+            return height;
+        }
+
+        public int[] rowStart() {
+            return rowStart;
+        }
+
+        public int[] runs() {
+            return runs;
+        }
+
+        public long sizeInBytes() {
+            return (long) (rowStart.length + runs.length) * Integer.BYTES;
+        }
+
+        public BinaryMask toMask() {
+            BinaryMask mask = new BinaryMask(width, height);
+            long[] bits = mask.bits;
+            for (int y = 0; y < height; y++) {
+                int x = 0;
+                boolean foreground = false;
+                for (int i = rowStart[y]; i < rowStart[y + 1]; i++) {
+                    int end = x + runs[i];
+                    if (foreground) {
+                        int base = mask.bitIndex(0, y);
+                        for (int pos = base + x; pos < base + end; pos++) {
+                            bits[pos >>> 6] |= 1L << pos;
+                        }
+                    }
+                    x = end;
+                    foreground = !foreground;
+                }
+            }
+            return mask;
+        }
+    }
+}
\ No newline at end of file
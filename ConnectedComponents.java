@@ -0,0 +1,420 @@
+package Project;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Connected components of a BinaryMask, labelled on a Parralel_segmenter pool: the segments
+// themselves (ids, pixel counts, bounding boxes, centroids) rather than just the mask.
+//
+// The label raster doubles as a union-find forest (labels[p] = parent index + 1, roots point
+// to themselves, 0 is background) and roots are always the smallest pixel index of their
+// tree. Row strips are labelled independently, then the rows either side of every strip
+// boundary are merged with a lock-free union (compareAndSet on the root). Flattening and
+// numbering are again per strip: roots are numbered in raster order, so component ids run
+// from 1 in order of each component's first pixel.
+public final class ConnectedComponents {
+    private static final VarHandle LABELS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int width;
+    private final int height;
+    private final boolean eightConnected;
+    private final int[] labels;
+    private final int count;
+    // Per component, indexed by id (slot 0 unused)
+    private final long[] area;
+    private final int[] minX, minY, maxX, maxY;
+    private final long[] sumX, sumY;
+
+    private ConnectedComponents(Labeling labeling) {
+        this.width = labeling.width;
+        this.height = labeling.height;
+        this.eightConnected = labeling.eightConnected;
+        this.labels = labeling.labels;
+        this.count = labeling.count;
+        this.area = labeling.area;
+        this.minX = labeling.minX;
+        this.minY = labeling.minY;
+        this.maxX = labeling.maxX;
+        this.maxY = labeling.maxY;
+        this.sumX = labeling.sumX;
+        this.sumY = labeling.sumY;
+    }
+
+    // Labels the mask's foreground on the engine's pool; eightConnected also joins diagonal
+    // neighbours. Strips follow Decomposition.rows(), about four per pool thread.
+    public static ConnectedComponents label(Parralel_segmenter engine, BinaryMask mask, boolean eightConnected) {
+        int stripRows = Decomposition.rows().leafSize(mask.width(), mask.height(), engine.parallelism(), () -> 1.0)[1];
+        Labeling labeling = new Labeling(mask, eightConnected, stripRows);
+        int strips = labeling.strips;
+        engine.invokeBands(0, strips, labeling::labelStrip);
+        engine.invokeBands(1, strips, labeling::mergeBoundary);
+        engine.invokeBands(0, strips, labeling::flatten);
+        labeling.allocateComponents();
+        engine.invokeBands(0, strips, labeling::numberRoots);
+        engine.invokeBands(0, strips, labeling::relabel);
+        labeling.mergeSharedStats();
+        return new ConnectedComponents(labeling);
+    }
+
+    // State of one labelling run, shared by the strip phases
+    private static final class Labeling {
+        private final long[] bits;
+        private final int wordsPerRow;
+        private final int width;
+        private final int height;
+        private final boolean eightConnected;
+        private final int stripRows;
+        private final int strips;
+        private final int[] labels;
+        private final int[][] roots;     // per strip, root pixels in raster order
+        private final int[] rootCount;   // per strip
+        private final int[] firstId;     // per strip, id of its first root
+        // Stats of components that started in an earlier strip, per strip, merged at the end
+        private final List<Map<Integer, long[]>> sharedStats;
+        private int count;
+        private long[] area;
+        private int[] minX, minY, maxX, maxY;
+        private long[] sumX, sumY;
+
+        Labeling(BinaryMask mask, boolean eightConnected, int stripRows) {
+            this.bits = mask.bits();
+            this.wordsPerRow = mask.wordsPerRow();
+            this.width = mask.width();
+            this.height = mask.height();
+            this.eightConnected = eightConnected;
+            this.stripRows = stripRows;
+            this.strips = (height + stripRows - 1) / stripRows;
+            this.labels = new int[Math.multiplyExact(width, height)];
+            this.roots = new int[strips][];
+            this.rootCount = new int[strips];
+            this.firstId = new int[strips];
+            // Each strip sets only its own slot, so the list is never resized concurrently
+            this.sharedStats = new ArrayList<>(Collections.nCopies(strips, null));
+        }
+
+        private boolean isSet(int x, int y) {
+            return (bits[y * wordsPerRow + (x >>> 6)] >>> x & 1) != 0;
+        }
+
+        // Calls visit(x, y) for every foreground pixel of row y, skipping empty words
+        private void forEachSet(int y, PixelVisitor visit) {
+            int base = y * wordsPerRow;
+            for (int i = 0; i < wordsPerRow; i++) {
+                long word = bits[base + i];
+                while (word != 0) {
+                    int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    visit.pixel(x, y);
+                }
+            }
+        }
+
+        // Phase 1: union-find within one strip; only the strip's own pixels are touched
+        void labelStrip(int strip) {
+            int y0 = strip * stripRows;
+            int y1 = Math.min(height, y0 + stripRows);
+            for (int y = y0; y < y1; y++) {
+                int base = y * wordsPerRow;
+                for (int i = 0; i < wordsPerRow; i++) {
+                    long word = bits[base + i];
+                    while (word != 0) {
+                        int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        int p = y * width + x;
+                        boolean left = x > 0 && isSet(x - 1, y);
+                        // Within a run, share the left neighbour's parent instead of a union
+                        labels[p] = left ? labels[p - 1] : p + 1;
+                        if (y > y0) {
+                            joinUp(x, y, left);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Phase 2: joins the first row of a strip to the last row of the strip above
+        void mergeBoundary(int strip) {
+            forEachSet(strip * stripRows, (x, y) -> joinUp(x, y, false));
+        }
+
+        // Unions p with its neighbours in the row above. leftJoined: the left neighbour is
+        // foreground and already joined, and with it anything above it.
+        private void joinUp(int x, int y, boolean leftJoined) {
+            int p = y * width + x;
+            int up = p - width;
+            if (isSet(x, y - 1)) {
+                // With 8-connectivity the diagonal neighbours touch this one, so are already joined
+                union(p, up);
+            } else if (eightConnected) {
+                if (!leftJoined && x > 0 && isSet(x - 1, y - 1)) {
+                    union(p, up - 1);
+                }
+                if (x + 1 < width && isSet(x + 1, y - 1)) {
+                    union(p, up + 1);
+                }
+            }
+        }
+
+        // Root of p with path halving. Halving only rewrites non-roots, which never become
+        // roots again, so it cannot undo a concurrent link.
+        private int find(int p) {
+            while (true) {
+                int parent = labels[p] - 1;
+                if (parent == p) {
+                    return p;
+                }
+                int grand = labels[parent] - 1;
+                if (grand != parent) {
+                    labels[p] = grand + 1;
+                }
+                p = grand;
+            }
+        }
+
+        // Links the larger root under the smaller one; retried if another thread linked it first
+        private void union(int a, int b) {
+            if (labels[a] == labels[b]) {
+                return; // Same parent, e.g. along a run
+            }
+            while (true) {
+                a = find(a);
+                b = find(b);
+                if (a == b) {
+                    return;
+                }
+                if (a < b) {
+                    int t = a;
+                    a = b;
+                    b = t;
+                }
+                if (LABELS.compareAndSet(labels, a, a + 1, b + 1)) {
+                    return;
+                }
+            }
+        }
+
+        // Phase 3: points every pixel straight at its root and lists the strip's roots. The
+        // forest no longer changes, so roots are found without writing to other strips' pixels.
+        void flatten(int strip) {
+            int y0 = strip * stripRows;
+            int y1 = Math.min(height, y0 + stripRows);
+            int[] found = new int[16];
+            int n = 0;
+            for (int y = y0; y < y1; y++) {
+                int base = y * wordsPerRow;
+                for (int i = 0; i < wordsPerRow; i++) {
+                    long word = bits[base + i];
+                    while (word != 0) {
+                        int p = y * width + (i << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        int root = p;
+                        while (labels[root] - 1 != root) {
+                            root = labels[root] - 1;
+                        }
+                        if (root == p) {
+                            if (n == found.length) {
+                                found = Arrays.copyOf(found, n * 2);
+                            }
+                            found[n++] = p;
+                        } else {
+                            labels[p] = root + 1;
+                        }
+                    }
+                }
+            }
+            roots[strip] = found;
+            rootCount[strip] = n;
+        }
+
+        void allocateComponents() {
+            int next = 1;
+            for (int s = 0; s < strips; s++) {
+                firstId[s] = next;
+                next += rootCount[s];
+            }
+            count = next - 1;
+            area = new long[count + 1];
+            sumX = new long[count + 1];
+            sumY = new long[count + 1];
+            minX = new int[count + 1];
+            minY = new int[count + 1];
+            maxX = new int[count + 1];
+            maxY = new int[count + 1];
+            Arrays.fill(minX, Integer.MAX_VALUE);
+            Arrays.fill(minY, Integer.MAX_VALUE);
+            Arrays.fill(maxX, -1);
+            Arrays.fill(maxY, -1);
+        }
+
+        // Phase 4: roots get their final ids, stored negated to tell them from parent links
+        void numberRoots(int strip) {
+            int[] found = roots[strip];
+            for (int i = 0; i < rootCount[strip]; i++) {
+                labels[found[i]] = -(firstId[strip] + i);
+            }
+            roots[strip] = null;
+        }
+
+        // Phase 5: final ids and statistics. A strip owns the ids of the components whose first
+        // pixel it holds and writes their stats directly; components reaching in from above are
+        // accumulated privately and merged afterwards.
+        void relabel(int strip) {
+            int y0 = strip * stripRows;
+            int y1 = Math.min(height, y0 + stripRows);
+            int ownFrom = firstId[strip];
+            Map<Integer, long[]> shared = new HashMap<>();
+            int lastId = 0;
+            long[] last = null;
+            for (int y = y0; y < y1; y++) {
+                int base = y * wordsPerRow;
+                for (int i = 0; i < wordsPerRow; i++) {
+                    long word = bits[base + i];
+                    while (word != 0) {
+                        int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        int p = y * width + x;
+                        int v = labels[p];
+                        // Another strip may already have made its root positive
+                        int id = (v < 0) ? -v : Math.abs(labels[v - 1]);
+                        labels[p] = id;
+                        if (id >= ownFrom) {
+                            area[id]++;
+                            sumX[id] += x;
+                            sumY[id] += y;
+                            minX[id] = Math.min(minX[id], x);
+                            minY[id] = Math.min(minY[id], y);
+                            maxX[id] = Math.max(maxX[id], x);
+                            maxY[id] = Math.max(maxY[id], y);
+                        } else {
+                            if (id != lastId) {
+                                // Runs of one component are common, so the map is consulted once per run
+                                lastId = id;
+                                last = shared.computeIfAbsent(id, k -> new long[]{0, 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1});
+                            }
+                            long[] s = last;
+                            s[0]++;
+                            s[1] += x;
+                            s[2] += y;
+                            s[3] = Math.min(s[3], x);
+                            s[4] = Math.min(s[4], y);
+                            s[5] = Math.max(s[5], x);
+                            s[6] = Math.max(s[6], y);
+                        }
+                    }
+                }
+            }
+            sharedStats.set(strip, shared);
+        }
+
+        void mergeSharedStats() {
+            for (Map<Integer, long[]> shared : sharedStats) {
+                if (shared == null) {
+                    continue;
+                }
+                for (Map.Entry<Integer, long[]> entry : shared.entrySet()) {
+                    int id = entry.getKey();
+                    long[] s = entry.getValue();
+                    area[id] += s[0];
+                    sumX[id] += s[1];
+                    sumY[id] += s[2];
+                    minX[id] = (int) Math.min(minX[id], s[3]);
+                    minY[id] = (int) Math.min(minY[id], s[4]);
+                    maxX[id] = (int) Math.max(maxX[id], s[5]);
+                    maxY[id] = (int) Math.max(maxY[id], s[6]);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PixelVisitor {
+        void pixel(int x, int y);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public boolean isEightConnected() {
+        return eightConnected;
+    }
+
+    // Number of components; ids run from 1 to count()
+    public int count() {
+        return count;
+    }
+
+    // Label raster, row-major: component id per pixel, 0 for background
+    public int[] labels() {
+        return labels;
+    }
+
+    public int label(int x, int y) {
+        return labels[y * width + x];
+    }
+
+    public long area(int id) {
+        return area[id];
+    }
+
+    public Rectangle bounds(int id) {
+        return new Rectangle(minX[id], minY[id], maxX[id] - minX[id] + 1, maxY[id] - minY[id] + 1);
+    }
+
+    public double centroidX(int id) {
+        return (double) sumX[id] / area[id];
+    }
+
+    public double centroidY(int id) {
+        return (double) sumY[id] / area[id];
+    }
+
+    // Id of the component with the most pixels, or 0 when there are none
+    public int largest() {
+        int best = 0;
+        for (int id = 1; id <= count; id++) {
+            if (best == 0 || area[id] > area[best]) {
+                best = id;
+            }
+        }
+        return best;
+    }
+
+    // Label raster as an image for display: background black, each component a stable colour
+    public BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int p = 0; p < labels.length; p++) {
+            int id = labels[p];
+            // Golden-ratio hashing spreads consecutive ids over the colour cube
+            data[p] = (id == 0) ? 0 : ((id * 0x9E3779B1) >>> 8) | 0x404040;
+        }
+        return image;
+    }
+
+    @Override
+    public String toString() {
+        int largest = largest();
+        if (largest == 0) {
+            return String.format(Locale.ROOT, "0 components (%d-connected)", eightConnected ? 8 : 4);
+        }
+        Rectangle box = bounds(largest);
+        return String.format(Locale.ROOT, "%d components (%d-connected); largest #%d: %d pixels, %dx%d at (%d, %d), centroid (%.1f, %.1f)",
+                count, eightConnected ? 8 : 4, largest, area(largest), box.width, box.height, box.x, box.y,
+                centroidX(largest), centroidY(largest));
+    }
+}
\ No newline at end of file
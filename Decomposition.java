@@ -0,0 +1,118 @@
+package Project;
+
+import java.util.function.DoubleSupplier;
+
+// How Parralel_segmenter cuts an image into leaf tasks.
+// Row strips split only along y, down to a fixed number of full-width rows.
+// Tiles split along whichever axis is longer relative to the tile size, so very wide
+// images still produce leaves whose input and output fit in a core's L2 cache.
+// Adaptive leaves hold a fixed amount of work, from the kernel's measured per-pixel cost.
+public final class Decomposition {
+    // Per-core L2 budget used for auto-sized tiles; override with -Dsegmenter.l2Bytes=...
+    private static final long L2_BYTES = Long.getLong("segmenter.l2Bytes", 256 * 1024);
+    private static final int BYTES_PER_PIXEL = 8; // packed ARGB in + packed ARGB out
+    private static final int MAX_AUTO_TILE_WIDTH = 512;
+    private static final int MIN_TILE_WIDTH = 64;
+    private static final int MIN_TILE_HEIGHT = 8;
+    // Work per adaptive leaf: long enough to amortise forking, short enough to balance well.
+    // Override with -Dsegmenter.leafMicros=...
+    private static final long LEAF_NANOS = Long.getLong("segmenter.leafMicros", 75) * 1000;
+
+    private final boolean adaptive;
+    private final boolean tiled;
+    private final int tileWidth;  // 0 = auto
+    private final int tileHeight; // 0 = auto
+
+    private Decomposition(boolean adaptive, boolean tiled, int tileWidth, int tileHeight) {
+        this.adaptive = adaptive;
+        this.tiled = tiled;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    public static Decomposition rows() {
+        return new Decomposition(false, false, 0, 0);
+    }
+
+    public static Decomposition autoTiles() {
+        return new Decomposition(false, true, 0, 0);
+    }
+
+    // Leaves sized to about segmenter.leafMicros of work each, whatever the image shape,
+    // pixel format or kernel. Costs are calibrated per kernel, layout and width (LeafCalibration).
+    public static Decomposition adaptive() {
+        return new Decomposition(true, false, 0, 0);
+    }
+
+    public static Decomposition tiles(int tileWidth, int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileWidth + "x" + tileHeight);
+        }
+        return new Decomposition(false, true, tileWidth, tileHeight);
+    }
+
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    // Leaf size as {width, height} for the given image and parallelism. nanosPerPixel is only
+    // consulted (and so only calibrated) for adaptive decompositions.
+    int[] leafSize(int imageWidth, int imageHeight, int numThreads, DoubleSupplier nanosPerPixel) {
+        if (adaptive) {
+            return adaptiveLeafSize(imageWidth, imageHeight, nanosPerPixel.getAsDouble());
+        }
+        if (!tiled) {
+            // Full-width strips, at least 10 rows, about 4 strips per thread
+            return new int[]{imageWidth, Math.max(10, imageHeight / (numThreads * 4))};
+        }
+        if (tileWidth > 0) {
+            return new int[]{tileWidth, tileHeight};
+        }
+
+        long budgetPixels = Math.max(MIN_TILE_WIDTH * MIN_TILE_HEIGHT, L2_BYTES / 2 / BYTES_PER_PIXEL);
+        int w = Math.max(1, Math.min(imageWidth, MAX_AUTO_TILE_WIDTH));
+        int h = (int) Math.max(1, Math.min(imageHeight, budgetPixels / w));
+
+        // Keep enough leaves around for the pool to balance small images
+        long minTiles = (long) numThreads * 4;
+        while (tileCount(imageWidth, imageHeight, w, h) < minTiles && (w > MIN_TILE_WIDTH || h > MIN_TILE_HEIGHT)) {
+            if (w > MIN_TILE_WIDTH && (w >= h || h <= MIN_TILE_HEIGHT)) {
+                w = Math.max(MIN_TILE_WIDTH, w / 2);
+            } else {
+                h = Math.max(MIN_TILE_HEIGHT, h / 2);
+            }
+        }
+        return new int[]{w, h};
+    }
+
+    private static int[] adaptiveLeafSize(int imageWidth, int imageHeight, double nanosPerPixel) {
+        long leafPixels = Math.max(MIN_TILE_WIDTH, (long) (LEAF_NANOS / nanosPerPixel));
+        if (leafPixels >= imageWidth) {
+            // Whole rows fit in a quantum: full-width strips, which read memory sequentially
+            return new int[]{imageWidth, (int) Math.min(imageHeight, leafPixels / imageWidth)};
+        }
+        // Very wide images: short, wide tiles so a few rows still make up one quantum
+        int w = (int) Math.max(MIN_TILE_WIDTH, Math.min(imageWidth, leafPixels / MIN_TILE_HEIGHT));
+        int h = (int) Math.max(1, Math.min(imageHeight, leafPixels / w));
+        return new int[]{w, h};
+    }
+
+    private static long tileCount(int imageWidth, int imageHeight, int w, int h) {
+        return (long) ((imageWidth + w - 1) / w) * ((imageHeight + h - 1) / h);
+    }
+
+    @Override
+    public String toString() {
+        if (adaptive) {
+            return "Adaptive";
+        }
+        if (!tiled) {
+            return "Row strips";
+        }
+        return (tileWidth > 0) ? "Tiles " + tileWidth + "x" + tileHeight : "Tiles (auto)";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,345 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Multi-class colour segmentation: k-means in RGB, then every pixel painted with its cluster's
+// centroid (SegmentationKernels.NearestCentroid). Offered as the "kmeans(k)" types.
+//
+// Each Lloyd iteration is one pass on a Parralel_segmenter pool, split like the segmentation
+// tasks; every leaf assigns its pixels and sums them into a private long[] (r, g, b, count per
+// cluster), and the partial sums are added as the tasks join. The centroids are seeded by
+// k-means++ on a random sample and refined on the sample first (subsampled initialization),
+// so the full-image passes start close to the answer and stop as soon as no centroid moves
+// more than the tolerance (early convergence stop). Large images can also be fitted on evenly
+// spaced rows only (fitPixels); the final segmentation pass always covers every pixel.
+public final class KMeansSegmentation {
+    public static final int MAX_K = 32;
+    public static final int DEFAULT_MAX_ITERATIONS = 20;
+    public static final double DEFAULT_TOLERANCE = 1.0;
+    public static final int DEFAULT_SAMPLE_SIZE = 20_000;
+    private static final Pattern TYPE = Pattern.compile("kmeans\\((\\d+)\\)");
+
+    private final int k;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+    private long fitPixels;
+    private long seed = 1;
+
+    public KMeansSegmentation(int k) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be 1-" + MAX_K + ": " + k);
+        }
+        this.k = k;
+    }
+
+    // "kmeans(k)" -> k, or 0 for any other type
+    public static int parseK(String type) {
+        Matcher m = TYPE.matcher(type);
+        return m.matches() ? Integer.parseInt(m.group(1)) : 0;
+    }
+
+    public static String type(int k) {
+        return "kmeans(" + k + ")";
+    }
+
+    // Full-image iterations after the sampled refinement; 0 keeps the sampled centroids as they are
+    public KMeansSegmentation maxIterations(int maxIterations) {
+        if (maxIterations < 0) {
+            throw new IllegalArgumentException("Iterations must not be negative: " + maxIterations);
+        }
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    // Largest centroid move (RGB distance) at which the iterations stop
+    public KMeansSegmentation tolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    // Pixels drawn for seeding and the sampled refinement; 0 seeds from k random pixels instead
+    public KMeansSegmentation sampleSize(int sampleSize) {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("Sample size must not be negative: " + sampleSize);
+        }
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    // Fit on evenly spaced rows holding about this many pixels; 0 fits on every pixel
+    public KMeansSegmentation fitPixels(long fitPixels) {
+        this.fitPixels = fitPixels;
+        return this;
+    }
+
+    public KMeansSegmentation seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // The fitted centroids and the kernel that paints them
+    public static final class Model {
+        private final int[] centroids;
+        private final int iterations;
+        private final boolean converged;
+        private final long fitNanos;
+        private final SegmentationKernels.NearestCentroid kernel;
+
+        Model(int[] centroids, int iterations, boolean converged, long fitNanos) {
+            this.centroids = centroids;
+            this.iterations = iterations;
+            this.converged = converged;
+            this.fitNanos = fitNanos;
+            this.kernel = new SegmentationKernels.NearestCentroid(type(centroids.length), centroids);
+        }
+
+        // Centroid colours as 0xRRGGBB
+        public int[] centroids() {
+            return centroids.clone();
+        }
+
+        // Full-image passes run
+        public int iterations() {
+            return iterations;
+        }
+
+        public boolean converged() {
+            return converged;
+        }
+
+        public long fitNanos() {
+            return fitNanos;
+        }
+
+        public SegmentationKernel kernel() {
+            return kernel;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder colors = new StringBuilder();
+            for (int c : centroids) {
+                colors.append(colors.length() == 0 ? "" : " ").append(String.format("#%06X", c));
+            }
+            return String.format(Locale.ROOT, "k-means k=%d: %d full-image iteration%s%s, fit %.2f ms, centroids %s",
+                    centroids.length, iterations, iterations == 1 ? "" : "s", converged ? " (converged)" : "",
+                    fitNanos / 1e6, colors);
+        }
+    }
+
+    public Model fit(Parralel_segmenter engine, BufferedImage image, Decomposition decomposition) {
+        long start = System.nanoTime();
+        PixelRows in = new PixelRows(image);
+        if (in.width() == 0 || in.height() == 0) {
+            throw new IllegalArgumentException("Cannot fit an empty image");
+        }
+        Random random = new Random(seed);
+        double[][] centroids;
+        if (sampleSize > 0) {
+            int[] sample = sample(in, sampleSize, random);
+            centroids = seedPlusPlus(sample, random);
+            refine(sample, centroids);
+        } else {
+            centroids = new double[k][];
+            int[] pixel = new int[1];
+            for (int i = 0; i < k; i++) {
+                in.read(random.nextInt(in.width()), random.nextInt(in.height()), 1, pixel);
+                centroids[i] = rgb(pixel[0]);
+            }
+        }
+
+        int rowStep = (fitPixels <= 0) ? 1 : (int) Math.max(1, (long) in.width() * in.height() / fitPixels);
+        int rows = (in.height() + rowStep - 1) / rowStep;
+        int iterations = 0;
+        boolean converged = false;
+        int[] leafSize = null;
+        while (!converged && iterations < maxIterations) {
+            SegmentationKernels.NearestCentroid assign = new SegmentationKernels.NearestCentroid(type(k), toRgb(centroids));
+            if (leafSize == null) {
+                leafSize = decomposition.leafSize(in.width(), rows, engine.parallelism(),
+                        () -> LeafCalibration.nanosPerPixel(in, null, assign));
+            }
+            long[] sums = engine.invoke(new AccumulateTask(in, assign, k, rowStep, leafSize[0], leafSize[1],
+                    0, in.width(), 0, rows));
+            converged = update(centroids, sums) <= tolerance;
+            iterations++;
+        }
+        return new Model(toRgb(centroids), iterations, converged, System.nanoTime() - start);
+    }
+
+    // One assignment pass over a region: per cluster r, g, b sums and the pixel count, in a
+    // leaf-private array; halves are added as the tasks join. Rows are in units of rowStep.
+    private static final class AccumulateTask extends RecursiveTask<long[]> {
+        private final PixelRows input;
+        private final SegmentationKernels.NearestCentroid assign;
+        private final int k;
+        private final int rowStep;
+        private final int leafWidth, leafHeight;
+        private final int startX, endX;
+        private final int startY, endY;
+
+        AccumulateTask(PixelRows input, SegmentationKernels.NearestCentroid assign, int k, int rowStep,
+                       int leafWidth, int leafHeight, int startX, int endX, int startY, int endY) {
+            this.input = input;
+            this.assign = assign;
+            this.k = k;
+            this.rowStep = rowStep;
+            this.leafWidth = leafWidth;
+            this.leafHeight = leafHeight;
+            this.startX = startX;
+            this.endX = endX;
+            this.startY = startY;
+            this.endY = endY;
+        }
+
+        @Override
+        protected long[] compute() {
+            int width = endX - startX;
+            int height = endY - startY;
+            if (width <= leafWidth && height <= leafHeight) {
+                long[] sums = new long[k * 4];
+                int[] row = new int[width];
+                for (int y = startY; y < endY; y++) {
+                    input.read(startX, y * rowStep, width, row);
+                    for (int x = 0; x < width; x++) {
+                        int p = row[x];
+                        int c = assign.nearest(p) << 2;
+                        sums[c] += (p >> 16) & 0xFF;
+                        sums[c + 1] += (p >> 8) & 0xFF;
+                        sums[c + 2] += p & 0xFF;
+                        sums[c + 3]++;
+                    }
+                }
+                return sums;
+            }
+            AccumulateTask first;
+            AccumulateTask second;
+            if (height > leafHeight) {
+                int mid = startY + height / 2;
+                first = new AccumulateTask(input, assign, k, rowStep, leafWidth, leafHeight, startX, endX, startY, mid);
+                second = new AccumulateTask(input, assign, k, rowStep, leafWidth, leafHeight, startX, endX, mid, endY);
+            } else {
+                int mid = startX + width / 2;
+                first = new AccumulateTask(input, assign, k, rowStep, leafWidth, leafHeight, startX, mid, startY, endY);
+                second = new AccumulateTask(input, assign, k, rowStep, leafWidth, leafHeight, mid, endX, startY, endY);
+            }
+            second.fork();
+            long[] sums = first.compute();
+            long[] other = second.join();
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other[i];
+            }
+            return sums;
+        }
+    }
+
+    // Moves each centroid to the mean of its pixels (an empty cluster stays put) and returns
+    // the largest move.
+    private static double update(double[][] centroids, long[] sums) {
+        double maxShift = 0;
+        for (int i = 0; i < centroids.length; i++) {
+            long n = sums[i * 4 + 3];
+            if (n == 0) {
+                continue;
+            }
+            double[] next = {(double) sums[i * 4] / n, (double) sums[i * 4 + 1] / n, (double) sums[i * 4 + 2] / n};
+            maxShift = Math.max(maxShift, Math.sqrt(distance2(centroids[i], next)));
+            centroids[i] = next;
+        }
+        return maxShift;
+    }
+
+    private static int[] sample(PixelRows in, int size, Random random) {
+        long pixels = (long) in.width() * in.height();
+        int n = (int) Math.min(size, pixels);
+        int[] sample = new int[n];
+        int[] pixel = new int[1];
+        for (int i = 0; i < n; i++) {
+            long pos = (n == pixels) ? i : (long) (random.nextDouble() * pixels);
+            in.read((int) (pos % in.width()), (int) (pos / in.width()), 1, pixel);
+            sample[i] = pixel[0];
+        }
+        return sample;
+    }
+
+    // k-means++ seeding: each next centroid drawn with probability proportional to the squared
+    // distance to the nearest centroid so far.
+    private double[][] seedPlusPlus(int[] sample, Random random) {
+        double[][] centroids = new double[k][];
+        double[] nearest = new double[sample.length];
+        centroids[0] = rgb(sample[random.nextInt(sample.length)]);
+        Arrays.fill(nearest, Double.MAX_VALUE);
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < sample.length; i++) {
+                nearest[i] = Math.min(nearest[i], distance2(rgb(sample[i]), centroids[c - 1]));
+                total += nearest[i];
+            }
+            int pick = random.nextInt(sample.length);
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < sample.length; i++) {
+                    target -= nearest[i];
+                    if (target <= 0) {
+                        pick = i;
+                        break;
+                    }
+                }
+            }
+            centroids[c] = rgb(sample[pick]);
+        }
+        return centroids;
+    }
+
+    // Lloyd iterations on the sample only; too few pixels to be worth a NearestCentroid table
+    private void refine(int[] sample, double[][] centroids) {
+        double[] pixel = new double[3];
+        for (int iteration = 0; iteration < 4 * DEFAULT_MAX_ITERATIONS; iteration++) {
+            long[] sums = new long[k * 4];
+            for (int p : sample) {
+                pixel[0] = (p >> 16) & 0xFF;
+                pixel[1] = (p >> 8) & 0xFF;
+                pixel[2] = p & 0xFF;
+                int c = 0;
+                for (int i = 1; i < k; i++) {
+                    if (distance2(pixel, centroids[i]) < distance2(pixel, centroids[c])) {
+                        c = i;
+                    }
+                }
+                c <<= 2;
+                sums[c] += (p >> 16) & 0xFF;
+                sums[c + 1] += (p >> 8) & 0xFF;
+                sums[c + 2] += p & 0xFF;
+                sums[c + 3]++;
+            }
+            if (update(centroids, sums) <= tolerance / 4) {
+                return;
+            }
+        }
+    }
+
+    private static double[] rgb(int p) {
+        return new double[]{(p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF};
+    }
+
+    private static double distance2(double[] a, double[] b) {
+        double dr = a[0] - b[0], dg = a[1] - b[1], db = a[2] - b[2];
+        return dr * dr + dg * dg + db * db;
+    }
+
+    private static int[] toRgb(double[][] centroids) {
+        int[] rgb = new int[centroids.length];
+        for (int i = 0; i < centroids.length; i++) {
+            rgb[i] = (int) Math.round(centroids[i][0]) << 16 | (int) Math.round(centroids[i][1]) << 8
+                    | (int) Math.round(centroids[i][2]);
+        }
+        return rgb;
+    }
+}
\ No newline at end of file
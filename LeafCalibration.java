@@ -0,0 +1,83 @@
+package Project;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Measured per-pixel cost of a kernel on a given raster layout and width, used by
+// Decomposition.adaptive() to size leaves to a fixed amount of work. A calibration times a
+// few sample rows; the first few jobs per key each add a sample (keeping the cheapest, since
+// early samples still run interpreted code), after which the cached value is used as is.
+// Costs are keyed by the kernel's cost class rather than its name, as parameters such as the
+// threshold change the result but not the cost (the centroid count does, and is part of the
+// cost class), and by width rounded down to a power of two; the table is bounded, so a long
+// run over varied images and thresholds does not keep calibrating.
+final class LeafCalibration {
+    private static final int SAMPLE_ROWS = 4;
+    private static final int SAMPLE_WIDTH = 4096;
+    private static final int REPETITIONS = 3;
+    private static final int CALIBRATIONS_PER_KEY = 3;
+    private static final double MIN_NANOS_PER_PIXEL = 0.05;
+    private static final int MAX_KEYS = 256;
+
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        private volatile double nanosPerPixel = Double.MAX_VALUE;
+        private final AtomicInteger calibrations = new AtomicInteger();
+    }
+
+    private LeafCalibration() {
+    }
+
+    // Nanoseconds per pixel for this kernel reading `in` and writing `out` (null for masks).
+    static double nanosPerPixel(PixelRows in, PixelRows out, SegmentationKernel kernel) {
+        // Wider rows than the sample cost the same per pixel
+        int widthClass = Math.min(Integer.highestOneBit(Math.max(1, in.width())), SAMPLE_WIDTH);
+        String key = kernel.costClass() + '|' + in.layout() + '|' + ((out == null) ? "mask" : out.layout())
+                + '|' + widthClass;
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            if (cache.size() >= MAX_KEYS) {
+                // Only reachable with many cost classes; recalibrating is cheaper than growing
+                cache.clear();
+            }
+            entry = cache.computeIfAbsent(key, k -> new Entry());
+        }
+        if (entry.calibrations.get() < CALIBRATIONS_PER_KEY) {
+            double measured = measure(in, out != null, kernel);
+            entry.nanosPerPixel = Math.min(entry.nanosPerPixel, measured);
+            entry.calibrations.incrementAndGet();
+        }
+        return entry.nanosPerPixel;
+    }
+
+    // Times a few rows spread over the image. Results go to scratch buffers, never to the
+    // output, so in-place jobs are not disturbed.
+    private static double measure(PixelRows in, boolean pixels, SegmentationKernel kernel) {
+        int width = Math.min(in.width(), SAMPLE_WIDTH);
+        int rows = Math.min(in.height(), SAMPLE_ROWS);
+        if (width == 0 || rows == 0) {
+            return MIN_NANOS_PER_PIXEL;
+        }
+        int[] inRow = new int[width];
+        int[] outRow = new int[width];
+        long[] bits = new long[(width + 63) >>> 6];
+
+        long best = Long.MAX_VALUE;
+        for (int rep = 0; rep < REPETITIONS; rep++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < rows; r++) {
+                int y = (rows == 1) ? 0 : (int) ((long) r * (in.height() - 1) / (rows - 1));
+                in.read(0, y, width, inRow);
+                if (pixels) {
+                    kernel.segmentRow(inRow, 0, outRow, 0, width);
+                } else {
+                    kernel.maskRow(inRow, 0, bits, 0, width, outRow);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return Math.max(MIN_NANOS_PER_PIXEL, best / ((double) width * rows));
+    }
+}
\ No newline at end of file
@@ -3,9 +3,32 @@ package Project;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+// Shows an image scaled to the panel while engines write into it. Painting never rescales the
+// full-resolution image: the panel keeps a panel-sized copy, rendered from a small mipmap
+// pyramid (box-filtered levels, the largest one no more than 2x the panel size), and only the
+// regions the engines report as written are brought up to date. Nothing here takes a lock the
+// worker threads could block on.
 public class LiveImageDisplay extends JPanel {
-    private BufferedImage image;
+    // Live progress is repainted from a Swing timer at most this many times a second
+    public static final int MAX_FPS = 30;
+    // Extra, smaller pyramid levels kept so the panel can shrink without a full rebuild
+    private static final int EXTRA_LEVELS = 3;
+
+    private volatile BufferedImage image;
+    private final Timer progressTimer = new Timer(1000 / MAX_FPS, e -> flushProgress());
+    private volatile SegmentationProgress progress;
+
+    // Rendering state, touched only on the EDT
+    private BufferedImage renderedFor;   // image the pyramid and cache were built from
+    private int firstLevel;              // pyramid level of levels.get(0); level 0 is the image itself
+    private final List<BufferedImage> levels = new ArrayList<>();
+    private BufferedImage scaled;        // panel-sized rendition
+    private BufferedImage scaledFor;     // image the rendition shows
+    private int scaledLevel;             // pyramid level the rendition is drawn from
 
     public LiveImageDisplay(BufferedImage image) {
         this.image = image;
@@ -16,10 +39,9 @@ public class LiveImageDisplay extends JPanel {
         }
     }
 
+    // May be called from any thread; the scaled rendition is rebuilt on the next paint.
     public void setImage(BufferedImage newImage) {
-        synchronized (this) {
-            this.image = newImage;
-        }
+        this.image = newImage;
         if (newImage != null && (getPreferredSize().width != newImage.getWidth() || getPreferredSize().height != newImage.getHeight())) {
             setPreferredSize(new Dimension(newImage.getWidth(), newImage.getHeight()));
             revalidate();
@@ -27,22 +49,232 @@ public class LiveImageDisplay extends JPanel {
         repaint();
     }
 
+    // Called by an engine when a run writing into this panel's image starts. The returned
+    // progress is filled in by the workers and repainted here, on the EDT, region by region.
+    public SegmentationProgress startProgress() {
+        BufferedImage current = image;
+        SegmentationProgress newProgress = (current == null)
+                ? new SegmentationProgress(0, 0) : new SegmentationProgress(current.getWidth(), current.getHeight());
+        progress = newProgress;
+        progressTimer.start();
+        return newProgress;
+    }
+
+    private void flushProgress() {
+        SegmentationProgress current = progress;
+        if (current == null) {
+            progressTimer.stop();
+            return;
+        }
+        // Read before draining so regions published just before finishing are not missed
+        boolean finished = current.isFinished();
+        BufferedImage shown = image;
+        // The pyramid is kept up to date whenever it is built from the shown image, or the next
+        // paint would take it as valid and render stale levels; the rendition only while it
+        // matches the panel, as the next paint redraws a mismatched one from the pyramid anyway
+        boolean pyramidValid = shown != null && renderedFor == shown;
+        boolean scaledValid = pyramidValid && scaled != null && scaledFor == shown
+                && scaled.getWidth() == getWidth() && scaled.getHeight() == getHeight();
+        for (Rectangle region : current.drainDirty()) {
+            if (pyramidValid) {
+                updateRegion(region, scaledValid);
+            }
+            repaintImageRegion(region, current.width(), current.height());
+        }
+        if (finished && progress == current) {
+            progress = null;
+            progressTimer.stop();
+        }
+    }
+
+    // Repaints the panel area showing the given image-space region (the image is scaled to the panel)
+    private void repaintImageRegion(Rectangle region, int imageWidth, int imageHeight) {
+        if (imageWidth == 0 || imageHeight == 0) {
+            return;
+        }
+        repaint(toPanel(region, imageWidth, imageHeight));
+    }
+
+    private Rectangle toPanel(Rectangle region, int imageWidth, int imageHeight) {
+        double sx = (double) getWidth() / imageWidth;
+        double sy = (double) getHeight() / imageHeight;
+        int x0 = (int) Math.floor(region.x * sx);
+        int y0 = (int) Math.floor(region.y * sy);
+        int x1 = (int) Math.ceil((region.x + region.width) * sx);
+        int y1 = (int) Math.ceil((region.y + region.height) * sy);
+        // One pixel of margin for the bilinear filter's reach into neighbouring pixels
+        return new Rectangle(x0 - 1, y0 - 1, x1 - x0 + 2, y1 - y0 + 2);
+    }
+
+    // Brings the pyramid and (if renderScaled) the panel-sized rendition up to date for a
+    // written image region.
+    private void updateRegion(Rectangle region, boolean renderScaled) {
+        BufferedImage source = renderedFor;
+        for (int i = 0; i < levels.size(); i++) {
+            int level = firstLevel + i;
+            if (i == 0) {
+                // First stored level straight from the full-resolution image
+                downsample(new PixelRows(source), 1 << level, levels.get(0), scaleDown(region, level));
+            } else {
+                downsample(new PixelRows(levels.get(i - 1)), 2, levels.get(i), scaleDown(region, level));
+            }
+        }
+        if (renderScaled) {
+            renderScaled(toPanel(region, source.getWidth(), source.getHeight()));
+        }
+    }
+
+    // The image-space region covered at a pyramid level, rounded outwards
+    private static Rectangle scaleDown(Rectangle region, int level) {
+        int f = 1 << level;
+        int x0 = region.x / f;
+        int y0 = region.y / f;
+        int x1 = (region.x + region.width + f - 1) / f;
+        int y1 = (region.y + region.height + f - 1) / f;
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    // Box-filters factor x factor blocks (factor a power of two) of src into the target region of dst (in dst pixels).
+    private static void downsample(PixelRows src, int factor, BufferedImage dst, Rectangle target) {
+        Rectangle area = target.intersection(new Rectangle(0, 0, dst.getWidth(), dst.getHeight()));
+        if (area.isEmpty()) {
+            return;
+        }
+        int srcX = area.x * factor;
+        int srcW = Math.min(src.width(), (area.x + area.width) * factor) - srcX;
+        int[] row = new int[srcW];
+        int[] a = new int[area.width];
+        int[] r = new int[area.width];
+        int[] g = new int[area.width];
+        int[] b = new int[area.width];
+        int[] out = new int[area.width];
+        int shift = Integer.numberOfTrailingZeros(factor); // factor is a power of two
+        PixelRows dstRows = new PixelRows(dst);
+
+        for (int y = area.y; y < area.y + area.height; y++) {
+            Arrays.fill(a, 0);
+            Arrays.fill(r, 0);
+            Arrays.fill(g, 0);
+            Arrays.fill(b, 0);
+            int rowStart = y * factor;
+            int rowEnd = Math.min(src.height(), rowStart + factor);
+            for (int sy = rowStart; sy < rowEnd; sy++) {
+                src.read(srcX, sy, srcW, row);
+                for (int sx = 0; sx < srcW; sx++) {
+                    int p = row[sx];
+                    int d = sx >> shift;
+                    a[d] += p >>> 24;
+                    r[d] += (p >> 16) & 0xFF;
+                    g[d] += (p >> 8) & 0xFF;
+                    b[d] += p & 0xFF;
+                }
+            }
+            int rows = rowEnd - rowStart;
+            for (int d = 0; d < area.width; d++) {
+                int cols = Math.min(factor, srcW - d * factor);
+                int n = rows * cols;
+                out[d] = (a[d] / n) << 24 | (r[d] / n) << 16 | (g[d] / n) << 8 | (b[d] / n);
+            }
+            dstRows.write(area.x, y, area.width, out);
+        }
+    }
+
+    // Redraws part (or, with clip == null, all) of the panel-sized rendition from the pyramid.
+    private void renderScaled(Rectangle clip) {
+        BufferedImage level = (scaledLevel == 0) ? renderedFor : levels.get(scaledLevel - firstLevel);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            if (clip != null) {
+                g.setClip(clip);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(level, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    // Largest pyramid level that is still at least as big as the panel (0 = the image itself)
+    private static int levelFor(BufferedImage image, int panelWidth, int panelHeight) {
+        int level = 0;
+        while (level < 30 && (image.getWidth() >> (level + 1)) >= panelWidth
+                && (image.getHeight() >> (level + 1)) >= panelHeight) {
+            level++;
+        }
+        return level;
+    }
+
+    // Rebuilds whatever the current image and panel size invalidated. Runs on the EDT.
+    private void ensureRendered(BufferedImage current) {
+        int width = getWidth();
+        int height = getHeight();
+        int wanted = levelFor(current, width, height);
+        // A grown panel needs a finer level than the pyramid holds; a shrunk one reuses a coarser level
+        boolean pyramidValid = current == renderedFor && (wanted == 0 || (!levels.isEmpty() && wanted >= firstLevel));
+        if (!pyramidValid) {
+            buildPyramid(current, wanted);
+        }
+        int level = (wanted == 0) ? 0 : Math.min(wanted, firstLevel + levels.size() - 1);
+        if (scaled == null || scaled.getWidth() != width || scaled.getHeight() != height
+                || scaledFor != current || level != scaledLevel) {
+            if (scaled == null || scaled.getWidth() != width || scaled.getHeight() != height) {
+                scaled = createRendition(width, height);
+            }
+            scaledFor = current;
+            scaledLevel = level;
+            renderScaled(null);
+        }
+    }
+
+    private void buildPyramid(BufferedImage current, int level) {
+        levels.clear();
+        renderedFor = current;
+        firstLevel = Math.max(1, level);
+        if (level == 0) {
+            return;
+        }
+        for (int l = firstLevel; l <= firstLevel + EXTRA_LEVELS; l++) {
+            int w = (current.getWidth() + (1 << l) - 1) >> l;
+            int h = (current.getHeight() + (1 << l) - 1) >> l;
+            if (w < 1 || h < 1 || (l > firstLevel && (w < 2 || h < 2))) {
+                break;
+            }
+            levels.add(new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB));
+        }
+        Rectangle all = new Rectangle(0, 0, current.getWidth(), current.getHeight());
+        for (int i = 0; i < levels.size(); i++) {
+            if (i == 0) {
+                downsample(new PixelRows(current), 1 << firstLevel, levels.get(0), scaleDown(all, firstLevel));
+            } else {
+                downsample(new PixelRows(levels.get(i - 1)), 2, levels.get(i), scaleDown(all, firstLevel + i));
+            }
+        }
+    }
+
+    private BufferedImage createRendition(int width, int height) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        // A compatible image is kept in video memory by Java2D when the pipeline allows it
+        return (gc != null) ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        synchronized (this) {
-            if (image != null) {
-                g.drawImage(image, 0, 0, getWidth(), getHeight(), null); // Scale image to panel size
-            } else {
-                g.setColor(Color.LIGHT_GRAY);
-                g.fillRect(0, 0, getWidth(), getHeight());
-                g.setColor(Color.BLACK);
-                String text = "Image Not Loaded";
-                FontMetrics fm = g.getFontMetrics();
-                int x = (getWidth() - fm.stringWidth(text)) / 2;
-                int y = (getHeight() - fm.getHeight()) / 2 + fm.getAscent();
-                g.drawString(text, x, y);
-            }
+        BufferedImage current = image;
+        if (current != null && getWidth() > 0 && getHeight() > 0) {
+            ensureRendered(current);
+            g.drawImage(scaled, 0, 0, null);
+        } else {
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setColor(Color.BLACK);
+            String text = "Image Not Loaded";
+            FontMetrics fm = g.getFontMetrics();
+            int x = (getWidth() - fm.stringWidth(text)) / 2;
+            int y = (getHeight() - fm.getHeight()) / 2 + fm.getAscent();
+            g.drawString(text, x, y);
         }
     }
 }
\ No newline at end of file
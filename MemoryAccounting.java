@@ -0,0 +1,146 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Per-run memory accounting without forcing GCs. Allocation is read from the JVM's per-thread
+// allocation counters (com.sun.management.ThreadMXBean) for the calling thread plus the engine's
+// pool workers, so it is exact to the TLAB and unaffected by other threads or GC timing.
+// Retained bytes are the sizes of the buffers a run leaves behind (output raster or mask).
+public final class MemoryAccounting {
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private MemoryAccounting() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)
+                || !bean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!bean.isThreadAllocatedMemoryEnabled()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return bean;
+    }
+
+    // False on JVMs without per-thread allocation counters; meters then report -1.
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    // Bytes allocated by a set of threads since the meter was started. The set is re-read when
+    // the meter is read, so pool workers spawned during the run are included (from zero). A
+    // thread that terminates mid-run takes its allocations with it.
+    public static final class Meter {
+        private final Supplier<? extends Collection<Thread>> threads;
+        private final Map<Long, Long> baseline = new HashMap<>();
+
+        private Meter(Supplier<? extends Collection<Thread>> threads) {
+            this.threads = threads;
+            if (THREADS != null) {
+                for (Thread thread : threads.get()) {
+                    long bytes = THREADS.getThreadAllocatedBytes(thread.getId());
+                    if (bytes >= 0) {
+                        baseline.put(thread.getId(), bytes);
+                    }
+                }
+            }
+        }
+
+        public long allocatedBytes() {
+            if (THREADS == null) {
+                return -1;
+            }
+            long total = 0;
+            for (Thread thread : threads.get()) {
+                long bytes = THREADS.getThreadAllocatedBytes(thread.getId());
+                if (bytes >= 0) {
+                    total += bytes - baseline.getOrDefault(thread.getId(), 0L);
+                }
+            }
+            return total;
+        }
+    }
+
+    // Meters the calling thread only, e.g. around a sequential run.
+    public static Meter start() {
+        Thread caller = Thread.currentThread();
+        return new Meter(() -> List.of(caller));
+    }
+
+    // Meters the calling thread plus every worker of the engine's pool.
+    public static Meter start(Parralel_segmenter engine) {
+        Thread caller = Thread.currentThread();
+        return new Meter(() -> {
+            Collection<Thread> threads = engine.workerThreads();
+            threads.add(caller);
+            return threads;
+        });
+    }
+
+    // Size of the pixel buffer backing the image (all banks), not counting object headers.
+    public static long bytesOf(BufferedImage image) {
+        if (image == null) {
+            return 0;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * (DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+    }
+
+    // What one run of one engine cost: bytes allocated while it ran, bytes its result retains,
+    // and their sum as the run's footprint (an upper bound on its peak, since nothing allocated
+    // during the run is assumed to have been freed).
+    public static final class RunMemory {
+        private final String engine;
+        private final long allocatedBytes;
+        private final long retainedBytes;
+
+        public RunMemory(String engine, long allocatedBytes, long retainedBytes) {
+            this.engine = engine;
+            this.allocatedBytes = allocatedBytes;
+            this.retainedBytes = retainedBytes;
+        }
+
+        public String engine() {
+            return engine;
+        }
+
+        // -1 when allocation counters are unavailable
+        public long allocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long retainedBytes() {
+            return retainedBytes;
+        }
+
+        public long footprintBytes() {
+            return retainedBytes + Math.max(0, allocatedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %s allocated, %s retained, %s footprint",
+                    engine, allocatedBytes < 0 ? "n/a" : formatBytes(allocatedBytes),
+                    formatBytes(retainedBytes), formatBytes(footprintBytes()));
+        }
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.2f MB", bytes / (1024.0 * 1024.0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+package Project;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Binary morphology on bit-packed masks with a square (2 * radius + 1) structuring element,
+// e.g. an opening to remove speckle from a threshold mask. The square is separable, so every
+// erosion or dilation is a horizontal then a vertical sliding AND / OR:
+//  - vertically, van Herk / Gil-Werman on whole 64-pixel words: per-block prefix and suffix
+//    results give any window with one more operation, three word operations per word whatever
+//    the radius;
+//  - horizontally, the window runs inside the bits of a row, so it is built by doubling from
+//    shifted copies of the row: about log2(radius) word operations per 64 pixels.
+// Pixels outside the image never change the result (erosion does not eat in from the border).
+//
+// Parralel_segmenter.segmentMask(input, kernel, decomposition, cleanup) runs this inside the
+// segmentation leaves: each strip is thresholded together with haloRows() rows above and below
+// and cleaned while still in cache, so the mask is written once, already cleaned.
+public final class Morphology {
+    public enum Operation {
+        ERODE, DILATE, OPEN, CLOSE;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static final String NONE = "none";
+
+    private final Operation operation;
+    private final int radius;
+
+    public Morphology(Operation operation, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be at least 1: " + radius);
+        }
+        this.operation = operation;
+        this.radius = radius;
+    }
+
+    // "open", "close:2", "erode:3", ... (radius 1 by default); null for "none"
+    public static Morphology parse(String text) {
+        String value = text.trim().toLowerCase(Locale.ROOT);
+        if (value.equals(NONE)) {
+            return null;
+        }
+        int colon = value.indexOf(':');
+        String name = (colon < 0) ? value : value.substring(0, colon);
+        int radius = 1;
+        if (colon >= 0) {
+            try {
+                radius = Integer.parseInt(value.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid morphology radius: " + text);
+            }
+        }
+        for (Operation operation : Operation.values()) {
+            if (operation.toString().equals(name)) {
+                return new Morphology(operation, radius);
+            }
+        }
+        throw new IllegalArgumentException("Unknown morphology operation: " + text);
+    }
+
+    public Operation operation() {
+        return operation;
+    }
+
+    public int radius() {
+        return radius;
+    }
+
+    // Rows of context a strip needs on each side to be cleaned exactly like the whole mask
+    public int haloRows() {
+        return (operation == Operation.OPEN || operation == Operation.CLOSE) ? 2 * radius : radius;
+    }
+
+    @Override
+    public String toString() {
+        return operation + ":" + radius;
+    }
+
+    // Cleaned copy of a whole mask
+    public BinaryMask apply(BinaryMask mask) {
+        BinaryMask result = new BinaryMask(mask.width(), mask.height());
+        long[] bits = result.bits();
+        System.arraycopy(mask.bits(), 0, bits, 0, bits.length);
+        apply(bits, mask.wordsPerRow(), mask.height(), mask.width());
+        return result;
+    }
+
+    // Cleans rows x wordsPerRow words in place, laid out like BinaryMask.bits(). Rows outside
+    // the array count as neutral, so a strip is only exact haloRows() rows in from a cut edge.
+    void apply(long[] bits, int wordsPerRow, int rows, int width) {
+        Scratch scratch = new Scratch(wordsPerRow, rows, radius);
+        switch (operation) {
+            case ERODE -> filter(bits, wordsPerRow, rows, width, true, scratch);
+            case DILATE -> filter(bits, wordsPerRow, rows, width, false, scratch);
+            case OPEN -> {
+                filter(bits, wordsPerRow, rows, width, true, scratch);
+                filter(bits, wordsPerRow, rows, width, false, scratch);
+            }
+            case CLOSE -> {
+                filter(bits, wordsPerRow, rows, width, false, scratch);
+                filter(bits, wordsPerRow, rows, width, true, scratch);
+            }
+        }
+    }
+
+    // Working rows for one apply() call
+    private static final class Scratch {
+        private final long[] forward;  // horizontal windows [x, x + m) of the doubling steps
+        private final long[] backward; // and (x - m, x]
+        private final long[] shifted;
+        private final long[] suffix;   // vertical per-block suffixes, rows + 2 * radius rows
+        private final long[] prefix;   // running vertical prefix, one row
+
+        Scratch(int wordsPerRow, int rows, int radius) {
+            forward = new long[wordsPerRow];
+            backward = new long[wordsPerRow];
+            shifted = new long[wordsPerRow];
+            suffix = new long[Math.multiplyExact(rows + 2 * radius, wordsPerRow)];
+            prefix = new long[wordsPerRow];
+        }
+    }
+
+    // One erosion (sliding AND, neutral -1) or dilation (sliding OR, neutral 0)
+    private void filter(long[] bits, int wordsPerRow, int rows, int width, boolean erode, Scratch scratch) {
+        long neutral = erode ? -1L : 0L;
+        long tail = ((width & 63) == 0) ? -1L : (1L << width) - 1; // valid bits of a row's last word
+
+        // Horizontal: the window [x - r, x + r] is the forward window [x, x + r] op the backward
+        // window [x - r, x]. Both have length r + 1 and are built by doubling from the largest
+        // power of two q <= r + 1, plus one overlapping step for the rest; every shift only
+        // brings in bits from outside the row, which are neutral.
+        int q = Integer.highestOneBit(radius + 1);
+        int rest = radius + 1 - q;
+        long[] forward = scratch.forward;
+        long[] backward = scratch.backward;
+        long[] shifted = scratch.shifted;
+        for (int y = 0; y < rows; y++) {
+            int base = y * wordsPerRow;
+            System.arraycopy(bits, base, forward, 0, wordsPerRow);
+            forward[wordsPerRow - 1] = (forward[wordsPerRow - 1] & tail) | (neutral & ~tail);
+            System.arraycopy(forward, 0, backward, 0, wordsPerRow);
+            for (int m = 1; m < q; m <<= 1) {
+                slide(forward, backward, shifted, wordsPerRow, m, neutral, erode);
+            }
+            if (rest > 0) {
+                slide(forward, backward, shifted, wordsPerRow, rest, neutral, erode);
+            }
+            combine(forward, 0, backward, 0, wordsPerRow, erode);
+            System.arraycopy(forward, 0, bits, base, wordsPerRow);
+        }
+
+        // Vertical, van Herk / Gil-Werman: padded row a is image row a - r; blocks of `length`
+        // padded rows each get suffix results (stored) and prefix results (running), and the
+        // window of image row y is suffix[y] op prefix[y + 2r].
+        int length = 2 * radius + 1;
+        int padded = rows + 2 * radius;
+        long[] suffix = scratch.suffix;
+        for (int a = padded - 1; a >= 0; a--) {
+            int at = a * wordsPerRow;
+            int y = a - radius;
+            if (y >= 0 && y < rows) {
+                System.arraycopy(bits, y * wordsPerRow, suffix, at, wordsPerRow);
+            } else {
+                Arrays.fill(suffix, at, at + wordsPerRow, neutral);
+            }
+            if (a % length != length - 1 && a + 1 < padded) {
+                combine(suffix, at, suffix, at + wordsPerRow, wordsPerRow, erode);
+            }
+        }
+        long[] prefix = scratch.prefix;
+        for (int a = 0; a < padded; a++) {
+            int y = a - radius;
+            boolean inside = y >= 0 && y < rows;
+            if (a % length == 0) {
+                if (inside) {
+                    System.arraycopy(bits, y * wordsPerRow, prefix, 0, wordsPerRow);
+                } else {
+                    Arrays.fill(prefix, neutral);
+                }
+            } else if (inside) {
+                combine(prefix, 0, bits, y * wordsPerRow, wordsPerRow, erode);
+            }
+            // Row a - 2r is final; it is read no more, as the prefix has moved past row a - r
+            int out = a - 2 * radius;
+            if (out >= 0) {
+                int base = out * wordsPerRow;
+                for (int i = 0; i < wordsPerRow; i++) {
+                    bits[base + i] = erode ? suffix[base + i] & prefix[i] : suffix[base + i] | prefix[i];
+                }
+                bits[base + wordsPerRow - 1] &= tail;
+            }
+        }
+    }
+
+    // Extends the forward windows by `by` pixels to the right and the backward ones to the left
+    private static void slide(long[] forward, long[] backward, long[] shifted, int words, int by, long fill,
+                              boolean and) {
+        shift(forward, shifted, words, by, fill);
+        combine(forward, 0, shifted, 0, words, and);
+        shift(backward, shifted, words, -by, fill);
+        combine(backward, 0, shifted, 0, words, and);
+    }
+
+    // dst[dstOff + i] = dst[dstOff + i] op src[srcOff + i]
+    private static void combine(long[] dst, int dstOff, long[] src, int srcOff, int words, boolean and) {
+        if (and) {
+            for (int i = 0; i < words; i++) {
+                dst[dstOff + i] &= src[srcOff + i];
+            }
+        } else {
+            for (int i = 0; i < words; i++) {
+                dst[dstOff + i] |= src[srcOff + i];
+            }
+        }
+    }
+
+    // Bit x of dst becomes bit x + offset of src (LSB-first rows), fill beyond either end.
+    private static void shift(long[] src, long[] dst, int words, int offset, long fill) {
+        int wordShift = offset >> 6;
+        int bitShift = offset & 63;
+        for (int i = 0; i < words; i++) {
+            int j = i + wordShift;
+            long lo = (j >= 0 && j < words) ? src[j] : fill;
+            if (bitShift == 0) {
+                dst[i] = lo;
+            } else {
+                long hi = (j + 1 >= 0 && j + 1 < words) ? src[j + 1] : fill;
+                dst[i] = (lo >>> bitShift) | (hi << (64 - bitShift));
+            }
+        }
+    }
+}
\ No newline at end of file
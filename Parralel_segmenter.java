@@ -1,125 +1,496 @@
 package Project;
 
 import java.awt.Color;
-import java.awt.image.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
-public class Parralel_segmenter {
-    private static final Set<String> threadNames = ConcurrentHashMap.newKeySet();
-    private static LiveImageDisplay livePanelRef; // Note: This will be null for scalability test runs
-    private static int LEAF_TASK_THRESHOLD;
+// Fork-join segmentation engine. An instance owns a long-lived ForkJoinPool (start/close);
+// the static segment() methods submit to a shared, warmed-up engine per parallelism level.
+public class Parralel_segmenter implements AutoCloseable {
+    private static final Map<Integer, Parralel_segmenter> sharedEngines = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final WorkerFactory workers; // null for the common pool
+
+    // Everything one segmentation run needs. Leaf size, live progress and telemetry
+    // live here instead of in static fields, so concurrent jobs on one pool never interfere.
+    private static final class Job {
+        private final PixelRows input;
+        private final PixelRows output; // null when producing a mask
+        private final BinaryMask mask;  // null when producing pixels
+        private final Morphology cleanup; // null unless the mask is cleaned in the leaves
+        private final SegmentationKernel kernel;
+        private final int leafWidth;
+        private final int leafHeight;
+        private final int columnAlign; // column splits fall on multiples of this (a power of two)
+        private final SegmentationProgress progress; // null unless a live panel is attached
+        private final int delayMs;
+        private final SegmentationTelemetry telemetry;
+
+        Job(PixelRows input, PixelRows output, BinaryMask mask, Morphology cleanup, SegmentationKernel kernel,
+            int[] leafSize, SegmentationProgress progress, int delayMs, SegmentationTelemetry telemetry) {
+            this.input = input;
+            this.output = output;
+            this.mask = mask;
+            this.cleanup = cleanup;
+            this.kernel = kernel;
+            // Mask leaves must own whole 64-pixel words, and leaves of a bit-packed output whole
+            // bytes, so column splits stay word or byte aligned
+            this.columnAlign = (mask != null) ? 64 : output.columnAlignment();
+            if (cleanup != null) {
+                // Cleaned leaves are full-width strips of leafHeight to 2 * leafHeight rows (see
+                // compute()), so the 2 * halo rows each strip thresholds again are at most 1/8
+                // of the rows it owns
+                this.leafWidth = input.width();
+                this.leafHeight = Math.max(leafSize[1], 16 * cleanup.haloRows());
+            } else {
+                this.leafWidth = (columnAlign == 1) ? leafSize[0]
+                        : Math.max(columnAlign, (leafSize[0] + columnAlign - 1) & -columnAlign);
+                this.leafHeight = leafSize[1];
+            }
+            this.progress = progress;
+            this.delayMs = delayMs;
+            this.telemetry = telemetry;
+        }
+    }
 
     private static class SegmentTask extends RecursiveAction {
-        private final Raster inputRaster;
-        private final WritableRaster outputRaster;
+        private final Job job;
+        private final int startX, endX;
         private final int startY, endY;
-        private final int threshold;
-        private final String type;
-        private final AtomicInteger processedRowsCounter;
-        private final int delayMs;
 
-        public SegmentTask(Raster inputRaster, WritableRaster outputRaster, int startY, int endY,
-                           int threshold, String type, AtomicInteger processedRowsCounter, int delayMs) {
-            this.inputRaster = inputRaster;
-            this.outputRaster = outputRaster;
+        public SegmentTask(Job job, int startX, int endX, int startY, int endY) {
+            this.job = job;
+            this.startX = startX;
+            this.endX = endX;
             this.startY = startY;
             this.endY = endY;
-            this.threshold = threshold;
-            this.type = type;
-            this.processedRowsCounter = processedRowsCounter;
-            this.delayMs = delayMs;
         }
 
         @Override
         protected void compute() {
-            threadNames.add(Thread.currentThread().getName());
+            Job job = this.job;
 
-            if (endY - startY <= LEAF_TASK_THRESHOLD) {
-                int width = inputRaster.getWidth();
-                int numBands = inputRaster.getNumBands();
-                int[] pixels = new int[numBands];
-                int[] newPixel = new int[numBands];
+            int width = endX - startX;
+            int height = endY - startY;
+            // Cleaned strips are only halved while both halves stay at least leafHeight tall
+            boolean leaf = width <= job.leafWidth
+                    && ((job.cleanup == null) ? height <= job.leafHeight : height < 2 * job.leafHeight);
+            if (leaf) {
+                SegmentationTelemetry.LeafEvent event = new SegmentationTelemetry.LeafEvent();
+                event.begin();
+                long leafStart = System.nanoTime();
+                // Scratch rows are per leaf, never per pixel
+                int[] inRow = new int[width];
+                int[] outRow = new int[width];
 
-                for (int y = startY; y < endY; y++) {
-                    for (int x = 0; x < width; x++) {
-                        inputRaster.getPixel(x, y, pixels);
-
-                        int r = pixels[0];
-                        int g = pixels[1];
-                        int b = pixels[2];
-                        int alpha = (numBands == 4) ? pixels[3] : 255; // Handle alpha if present
-
-                        int[] result;
-                        switch (type) {
-                            case "grayscale":
-                                int avg = (r + g + b) / 3;
-                                int bin = (avg < threshold) ? 0 : 255;
-                                result = new int[]{bin, bin, bin, alpha};
-                                break;
-                            case "red":
-                                result = (r > g && r > b && r > threshold) ? new int[]{255, 0, 0, alpha} : new int[]{0, 0, 0, alpha};
-                                break;
-                            case "green":
-                                result = (g > r && g > b && g > threshold) ? new int[]{0, 255, 0, alpha} : new int[]{0, 0, 0, alpha};
-                                break;
-                            case "custom":
-                                result = (r > 100 && g < 150 && b > 50) ? new int[]{r, g, b, alpha} : new int[]{0, 0, 0, alpha};
-                                break;
-                            default:
-                                result = new int[]{0, 0, 0, alpha};
-                                break;
-                        }
-                        System.arraycopy(result, 0, newPixel, 0, numBands);
-                        outputRaster.setPixel(x, y, newPixel);
+                int y = startY;
+                int published = startY;
+                if (job.cleanup != null) {
+                    cleanStrip(inRow, outRow);
+                    y = endY;
+                }
+                for (; y < endY; y++) {
+                    if (job.mask != null) {
+                        PixelKernels.maskRow(job.input, job.mask, startX, y, width, job.kernel, inRow, outRow);
+                    } else {
+                        PixelKernels.segmentRow(job.input, job.output, startX, y, width, job.kernel, inRow, outRow);
                     }
 
-                    int currentProcessedRows = processedRowsCounter.incrementAndGet();
-
-                    // Repaint and delay for every 10 globally processed rows.
-                    // This is a heuristic to balance update frequency and performance.
-                    if (currentProcessedRows % 10 == 0 && livePanelRef != null) {
-                        livePanelRef.repaint();
+                    // Publish this leaf's progress every few rows; the panel's timer does the
+                    // repainting on the EDT, so workers share no counter and never repaint.
+                    if (job.progress != null && y + 1 - published >= SegmentationProgress.PUBLISH_ROWS) {
+                        job.progress.rowsDone(startX, published, width, y + 1 - published);
+                        published = y + 1;
 
-                        if (delayMs > 0) {
+                        if (job.delayMs > 0) {
                             try {
-                                Thread.sleep(delayMs);
+                                Thread.sleep(job.delayMs);
                             } catch (InterruptedException e) {
                                 Thread.currentThread().interrupt();
                                 System.err.println("SegmentTask was interrupted during delay.");
-                                return;
+                                y++;
+                                break;
                             }
                         }
                     }
                 }
+                if (job.progress != null) {
+                    job.progress.rowsDone(startX, published, width, y - published);
+                }
+
+                int rows = y - startY;
+                job.telemetry.leafDone(rows, (long) rows * width, System.nanoTime() - leafStart);
+                if (event.shouldCommit()) {
+                    event.x = startX;
+                    event.y = startY;
+                    event.width = width;
+                    event.height = rows;
+                    event.commit();
+                }
+            } else if (height <= job.leafHeight
+                    || (width > job.leafWidth && (long) width * job.leafHeight >= (long) height * job.leafWidth)) {
+                // Wider than tall relative to the leaf shape: split the columns
+                int align = job.columnAlign;
+                int mid = startX + ((align == 1) ? width / 2 : Math.max(align, (width / 2) & -align));
+                job.telemetry.forked(2);
+                invokeAll(new SegmentTask(job, startX, mid, startY, endY), new SegmentTask(job, mid, endX, startY, endY));
             } else {
-                int mid = startY + (endY - startY) / 2;
-                SegmentTask leftTask = new SegmentTask(inputRaster, outputRaster, startY, mid, threshold, type, processedRowsCounter, delayMs);
-                SegmentTask rightTask = new SegmentTask(inputRaster, outputRaster, mid, endY, threshold, type, processedRowsCounter, delayMs);
-                invokeAll(leftTask, rightTask);
+                int mid = startY + height / 2;
+                job.telemetry.forked(2);
+                invokeAll(new SegmentTask(job, startX, endX, startY, mid), new SegmentTask(job, startX, endX, mid, endY));
             }
         }
+
+        // Thresholds rows [startY, endY) plus the cleanup's halo rows on each side into a
+        // leaf-private strip, cleans it while it is still in cache and copies the owned rows
+        // into the job's mask. Neighbouring strips threshold the shared halo rows again
+        // instead of waiting for each other.
+        private void cleanStrip(int[] inRow, int[] scratch) {
+            BinaryMask mask = job.mask;
+            int halo = job.cleanup.haloRows();
+            int from = Math.max(0, startY - halo);
+            int to = Math.min(mask.height(), endY + halo);
+            int width = mask.width();
+            int wordsPerRow = mask.wordsPerRow();
+            long[] strip = new long[Math.multiplyExact(to - from, wordsPerRow)];
+            for (int y = from; y < to; y++) {
+                PixelKernels.maskRow(job.input, 0, y, width, job.kernel, strip, (y - from) * wordsPerRow << 6, inRow, scratch);
+            }
+            job.cleanup.apply(strip, wordsPerRow, to - from, width);
+            System.arraycopy(strip, (startY - from) * wordsPerRow, mask.bits(), startY * wordsPerRow, (endY - startY) * wordsPerRow);
+        }
     }
 
-    public static void segment(BufferedImage input, BufferedImage output, int threshold,
-                               String type, int numThreads, LiveImageDisplay panel, int delayMs) {
+    private static final class BandTask extends RecursiveAction {
+        private final int from, to;
+        private final IntConsumer phase;
 
-        Raster inputRaster = input.getRaster();
-        WritableRaster outputRaster = output.getRaster();
-        threadNames.clear();
-        livePanelRef = panel; // Store reference to the panel (can be null for scalability test)
+        BandTask(int from, int to, IntConsumer phase) {
+            this.from = from;
+            this.to = to;
+            this.phase = phase;
+        }
 
-        int imageHeight = input.getHeight();
-        // Calculate LEAF_TASK_THRESHOLD dynamically, ensuring it's at least 10 rows
-        LEAF_TASK_THRESHOLD = Math.max(10, imageHeight / (numThreads * 4));
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                phase.accept(from);
+            } else if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BandTask(from, mid, phase), new BandTask(mid, to, phase));
+            }
+        }
+    }
+
+    // Counts the threshold keys (see ThresholdIndex.keyRow) of one region. Every leaf fills a
+    // private histogram and the halves are summed as the tasks join, so workers never share a
+    // counter; the root returns the histogram of the whole image. Rows are indexed in units of
+    // rowStep image rows, so a sampled histogram splits like a smaller image.
+    private static final class HistogramTask extends RecursiveTask<long[]> {
+        private final PixelRows input;
+        private final SegmentationKernel kernel;
+        private final int rowStep;
+        private final int leafWidth, leafHeight;
+        private final int startX, endX;
+        private final int startY, endY;
+
+        HistogramTask(PixelRows input, SegmentationKernel kernel, int rowStep, int leafWidth, int leafHeight,
+                      int startX, int endX, int startY, int endY) {
+            this.input = input;
+            this.kernel = kernel;
+            this.rowStep = rowStep;
+            this.leafWidth = leafWidth;
+            this.leafHeight = leafHeight;
+            this.startX = startX;
+            this.endX = endX;
+            this.startY = startY;
+            this.endY = endY;
+        }
+
+        @Override
+        protected long[] compute() {
+            int width = endX - startX;
+            int height = endY - startY;
+            if (width <= leafWidth && height <= leafHeight) {
+                long[] histogram = new long[256];
+                int[] row = new int[width];
+                int[] keys = new int[width];
+                for (int y = startY; y < endY; y++) {
+                    input.read(startX, y * rowStep, width, row);
+                    ThresholdIndex.keyRow(kernel, row, keys, width);
+                    for (int x = 0; x < width; x++) {
+                        int key = keys[x];
+                        if (key >= 0) {
+                            histogram[key]++;
+                        }
+                    }
+                }
+                return histogram;
+            }
+            HistogramTask first;
+            HistogramTask second;
+            if (height > leafHeight) {
+                int mid = startY + height / 2;
+                first = new HistogramTask(input, kernel, rowStep, leafWidth, leafHeight, startX, endX, startY, mid);
+                second = new HistogramTask(input, kernel, rowStep, leafWidth, leafHeight, startX, endX, mid, endY);
+            } else {
+                int mid = startX + width / 2;
+                first = new HistogramTask(input, kernel, rowStep, leafWidth, leafHeight, startX, mid, startY, endY);
+                second = new HistogramTask(input, kernel, rowStep, leafWidth, leafHeight, mid, endX, startY, endY);
+            }
+            second.fork();
+            long[] histogram = first.compute();
+            long[] other = second.join();
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other[i];
+            }
+            return histogram;
+        }
+    }
+
+    public static SegmentationTelemetry segment(BufferedImage input, BufferedImage output, int threshold,
+                                                String type, int numThreads, LiveImageDisplay panel, int delayMs) {
+        return segment(input, output, SegmentationKernels.forType(type, threshold), numThreads, panel, delayMs);
+    }
+
+    public static SegmentationTelemetry segment(BufferedImage input, BufferedImage output, SegmentationKernel kernel,
+                                                int numThreads, LiveImageDisplay panel, int delayMs) {
+        return segment(input, output, kernel, numThreads, panel, delayMs, Decomposition.adaptive());
+    }
+
+    public static SegmentationTelemetry segment(BufferedImage input, BufferedImage output, SegmentationKernel kernel,
+                                                int numThreads, LiveImageDisplay panel, int delayMs,
+                                                Decomposition decomposition) {
+        return shared(numThreads).segment(input, output, kernel, panel, delayMs, decomposition);
+    }
+
+    // Long-lived engine for the given parallelism, created and warmed up on first use.
+    public static Parralel_segmenter shared(int numThreads) {
+        return sharedEngines.computeIfAbsent(numThreads, n -> new Parralel_segmenter(n, true).start());
+    }
+
+    // Engine backed by ForkJoinPool.commonPool(); closing it is a no-op.
+    public static Parralel_segmenter commonPool() {
+        return new Parralel_segmenter(ForkJoinPool.commonPool(), false, null);
+    }
+
+    public static void closeShared() {
+        for (Integer n : sharedEngines.keySet()) {
+            Parralel_segmenter engine = sharedEngines.remove(n);
+            if (engine != null) {
+                engine.close();
+            }
+        }
+    }
+
+    public Parralel_segmenter(int numThreads) {
+        this(numThreads, false);
+    }
+
+    private Parralel_segmenter(int numThreads, boolean shared) {
+        this(new WorkerFactory(shared ? "segmenter-" + numThreads : "segmenter"), numThreads);
+    }
+
+    private Parralel_segmenter(WorkerFactory workers, int numThreads) {
+        this(new ForkJoinPool(numThreads, workers, null, false), true, workers);
+    }
+
+    private Parralel_segmenter(ForkJoinPool pool, boolean ownsPool, WorkerFactory workers) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.workers = workers;
+    }
+
+    // Spins up every worker thread so the first segment() call doesn't pay for thread creation.
+    public Parralel_segmenter start() {
+        int parallelism = pool.getParallelism();
+        CountDownLatch started = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    // Hold this worker until the others are up, so each task lands on a new thread
+                    started.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            started.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return this;
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    // Live worker threads of this engine's pool, for per-thread accounting (MemoryAccounting).
+    Collection<Thread> workerThreads() {
+        List<Thread> threads = new ArrayList<>();
+        if (workers != null) {
+            for (Thread thread : workers.threads) {
+                if (thread.isAlive()) {
+                    threads.add(thread);
+                }
+            }
+        } else {
+            // The common pool's factory isn't ours, so find its workers among all threads
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread instanceof ForkJoinWorkerThread worker && worker.getPool() == pool) {
+                    threads.add(thread);
+                }
+            }
+        }
+        return threads;
+    }
+
+    // Segments on this engine's pool and waits for the result. Safe to call from many threads
+    // at once: each call is an independent job and the pool interleaves their tasks.
+    // Returns how the job was spread over the pool.
+    public SegmentationTelemetry segment(BufferedImage input, BufferedImage output, SegmentationKernel kernel,
+                                         LiveImageDisplay panel, int delayMs, Decomposition decomposition) {
+        return segment(input, output, kernel, panel, delayMs, decomposition, null);
+    }
+
+    // Same, serving the output from the cache (may be null) when this input has been segmented
+    // with this kernel before, and adding it to the cache otherwise. Returns null on a hit, as
+    // no job ran.
+    public SegmentationTelemetry segment(BufferedImage input, BufferedImage output, SegmentationKernel kernel,
+                                         LiveImageDisplay panel, int delayMs, Decomposition decomposition,
+                                         ResultCache cache) {
+        SegmentationProgress progress = (panel == null) ? null : panel.startProgress();
+        try {
+            ResultCache.Key key = (cache == null) ? null : cache.key(this, input, ResultCache.imageVariant(kernel));
+            if (key != null && cache.getImage(key, output)) {
+                if (progress != null) {
+                    progress.rowsDone(0, 0, input.getWidth(), input.getHeight());
+                }
+                return null;
+            }
+            SegmentTask task = newTask(input, output, null, null, kernel, progress, delayMs, decomposition);
+            pool.invoke(task);
+            if (key != null) {
+                cache.putImage(key, output);
+            }
+            return task.job.telemetry.finish(pool);
+        } finally {
+            if (progress != null) {
+                progress.finish();
+            }
+        }
+    }
 
-        AtomicInteger processedRowsCounter = new AtomicInteger(0);
+    // Segments into a 1-bit-per-pixel mask instead of an ARGB image.
+    public BinaryMask segmentMask(BufferedImage input, SegmentationKernel kernel, Decomposition decomposition) {
+        return segmentMask(input, kernel, decomposition, null);
+    }
 
-        ForkJoinPool pool = new ForkJoinPool(numThreads);
+    // Same, cleaning the mask with a morphological operation (null for none) inside the
+    // segmentation leaves, so every strip is thresholded and cleaned in one pass.
+    public BinaryMask segmentMask(BufferedImage input, SegmentationKernel kernel, Decomposition decomposition,
+                                  Morphology cleanup) {
+        return segmentMask(input, kernel, decomposition, cleanup, null);
+    }
 
-        pool.invoke(new SegmentTask(inputRaster, outputRaster, 0, imageHeight, threshold, type, processedRowsCounter, delayMs));
+    // Same, looking the mask up in the cache (may be null) first and adding it on a miss.
+    public BinaryMask segmentMask(BufferedImage input, SegmentationKernel kernel, Decomposition decomposition,
+                                  Morphology cleanup, ResultCache cache) {
+        ResultCache.Key key = (cache == null) ? null : cache.key(this, input, ResultCache.maskVariant(kernel, cleanup));
+        BinaryMask cached = (key == null) ? null : cache.getMask(key);
+        if (cached != null) {
+            return cached;
+        }
+        BinaryMask mask = new BinaryMask(input.getWidth(), input.getHeight());
+        SegmentTask task = newTask(input, null, mask, cleanup, kernel, null, 0, decomposition);
+        pool.invoke(task);
+        task.job.telemetry.finish(pool);
+        if (key != null) {
+            cache.putMask(key, mask);
+        }
+        return mask;
+    }
 
+    // Histogram of the threshold key the kernel's type compares against its threshold (the
+    // channel average for grayscale, the dominant channel's value for red/green), computed on
+    // this engine's pool. Used by AutoThreshold to choose a threshold per image.
+    public long[] keyHistogram(BufferedImage input, SegmentationKernel kernel, Decomposition decomposition) {
+        return keyHistogram(input, kernel, decomposition, 1);
+    }
+
+    // Same, counting only every rowStep-th row (rows 0, rowStep, 2 * rowStep, ...).
+    public long[] keyHistogram(BufferedImage input, SegmentationKernel kernel, Decomposition decomposition, int rowStep) {
+        if (rowStep < 1) {
+            throw new IllegalArgumentException("Row step must be at least 1: " + rowStep);
+        }
+        if (!ThresholdIndex.supports(kernel)) {
+            throw new IllegalArgumentException("Kernel " + kernel.name() + " has no threshold key");
+        }
+        if (pool.isShutdown()) {
+            throw new IllegalStateException("Segmentation engine has been closed");
+        }
+        PixelRows in = new PixelRows(input);
+        // Counting costs about as much per pixel as producing a mask
+        int rows = (in.height() + rowStep - 1) / rowStep;
+        int[] leafSize = decomposition.leafSize(in.width(), rows, pool.getParallelism(),
+                () -> LeafCalibration.nanosPerPixel(in, null, kernel));
+        return pool.invoke(new HistogramTask(in, kernel, rowStep, leafSize[0], leafSize[1], 0, in.width(), 0, rows));
+    }
+
+    // Runs a task of another pipeline stage (e.g. ConnectedComponents) on this engine's pool.
+    <T> T invoke(ForkJoinTask<T> task) {
+        if (pool.isShutdown()) {
+            throw new IllegalStateException("Segmentation engine has been closed");
+        }
+        return pool.invoke(task);
+    }
+
+    // Runs phase(i) for every i in [from, to) on this engine's pool, splitting the range in
+    // halves like the segmentation tasks, and waits for all of them.
+    void invokeBands(int from, int to, IntConsumer phase) {
+        invoke(new BandTask(from, to, phase));
+    }
+
+    // Asynchronous variant of segment(); join() or get() the returned task for completion.
+    public ForkJoinTask<Void> submit(BufferedImage input, BufferedImage output, SegmentationKernel kernel,
+                                     Decomposition decomposition) {
+        return pool.submit(newTask(input, output, null, null, kernel, null, 0, decomposition));
+    }
+
+    private SegmentTask newTask(BufferedImage input, BufferedImage output, BinaryMask mask, Morphology cleanup,
+                                SegmentationKernel kernel, SegmentationProgress progress, int delayMs,
+                                Decomposition decomposition) {
+        if (pool.isShutdown()) {
+            throw new IllegalStateException("Segmentation engine has been closed");
+        }
+        int imageWidth = input.getWidth();
+        int imageHeight = input.getHeight();
+        PixelRows in = new PixelRows(input);
+        PixelRows out = (output == null) ? null : new PixelRows(output);
+        int[] leafSize = decomposition.leafSize(imageWidth, imageHeight, pool.getParallelism(),
+                () -> LeafCalibration.nanosPerPixel(in, out, kernel));
+        Job job = new Job(in, out, mask, cleanup, kernel, leafSize, progress, delayMs, new SegmentationTelemetry(kernel.name(), imageWidth, imageHeight, pool));
+        return new SegmentTask(job, 0, imageWidth, 0, imageHeight);
+    }
+
+    @Override
+    public void close() {
+        if (!ownsPool) {
+            return;
+        }
+        sharedEngines.values().remove(this);
         pool.shutdown();
         try {
             if (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
@@ -127,9 +498,28 @@ public class Parralel_segmenter {
             }
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
-            System.err.println("Parallel segmentation interrupted while waiting for tasks to complete.");
+            System.err.println("Interrupted while shutting down the segmentation pool.");
+        }
+    }
+
+    // Daemon workers with recognisable names, e.g. "segmenter-8-worker-3".
+    private static final class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        WorkerFactory(String prefix) {
+            this.prefix = prefix;
         }
 
-        livePanelRef = null; // Clear reference after completion
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(prefix + "-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            threads.removeIf(t -> t.getState() == Thread.State.TERMINATED);
+            threads.add(thread);
+            return thread;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package Project;
+
+// Row plumbing shared by SequentialSegmenter and Parralel_segmenter: hands each row to the
+// job's SegmentationKernel in place when the image layout allows it, otherwise through
+// caller-owned scratch rows, so no per-pixel allocation or Raster dispatch happens.
+final class PixelKernels {
+
+    private PixelKernels() {
+    }
+
+    // Segments the w pixels starting at (x, y). inRow/outRow are caller-owned scratch rows
+    // of at least w elements, only touched when the image cannot be accessed in place.
+    static void segmentRow(PixelRows in, PixelRows out, int x, int y, int w,
+                           SegmentationKernel kernel, int[] inRow, int[] outRow) {
+        int[] src;
+        int srcOff;
+        if (in.canReadInPlace()) {
+            src = in.packedData();
+            srcOff = in.offset(x, y);
+        } else {
+            in.read(x, y, w, inRow);
+            src = inRow;
+            srcOff = 0;
+        }
+
+        boolean direct = out.canWriteInPlace();
+        int[] dst = direct ? out.packedData() : outRow;
+        int dstOff = direct ? out.offset(x, y) : 0;
+
+        kernel.segmentRow(src, srcOff, dst, dstOff, w);
+
+        if (!direct) {
+            out.write(x, y, w, outRow);
+        }
+    }
+
+    // Marks the foreground pixels among the w pixels starting at (x, y) in the mask.
+    static void maskRow(PixelRows in, BinaryMask mask, int x, int y, int w,
+                        SegmentationKernel kernel, int[] inRow, int[] scratch) {
+        maskRow(in, x, y, w, kernel, mask.bits(), mask.bitIndex(x, y), inRow, scratch);
+    }
+
+    // Same, into bits starting at bitOff, e.g. a leaf-private strip of mask rows.
+    static void maskRow(PixelRows in, int x, int y, int w, SegmentationKernel kernel,
+                        long[] bits, int bitOff, int[] inRow, int[] scratch) {
+        if (in.canReadInPlace()) {
+            kernel.maskRow(in.packedData(), in.offset(x, y), bits, bitOff, w, scratch);
+        } else {
+            in.read(x, y, w, inRow);
+            kernel.maskRow(inRow, 0, bits, bitOff, w, scratch);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,297 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+// Row-level access to the pixels of a BufferedImage, working directly on the backing
+// DataBufferInt/DataBufferByte array. Rows are exchanged as packed ARGB ints so the
+// segmentation loops never go through Raster.getPixel/setPixel or allocate per pixel.
+final class PixelRows {
+    private static final int GENERIC = 0;
+    private static final int INT_ARGB = 1;
+    private static final int INT_RGB = 2;
+    private static final int BYTE_RGB = 3;  // interleaved 8-bit R,G,B in any band order
+    private static final int BYTE_RGBA = 4; // interleaved 8-bit R,G,B,A in any band order
+    private static final int BYTE_GRAY = 5; // 8-bit indices into the gray ramp 0x000000..0xFFFFFF
+    private static final int BIT_2 = 6;     // 1-bit indices into a 2-colour palette, MSB first
+
+    private static final int[] ARGB_MASKS = {0xFF0000, 0xFF00, 0xFF, 0xFF000000};
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+
+    private final BufferedImage image;
+    private final int width;
+    private final int height;
+    private final int layout;
+    private final int[] intData;
+    private final byte[] byteData;
+    private final int base;        // array index of pixel (0, 0)
+    private final int scanline;    // array elements per row
+    private final int pixelStride; // array elements per pixel
+    private final int rOff, gOff, bOff, aOff; // byte layouts: position of each band in a pixel
+    private final int[] colors;    // indexed layouts: the palette as opaque ARGB
+
+    PixelRows(BufferedImage image) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+
+        WritableRaster raster = image.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        ColorModel cm = image.getColorModel();
+        // Decided from the actual layout rather than getType(): images built from a ColorModel
+        // and raster (deepCopy, createCompatibleWritableRaster) often report TYPE_CUSTOM.
+        boolean plainSrgb = cm.getColorSpace().isCS_sRGB() && !cm.isAlphaPremultiplied() && db.getNumBanks() == 1;
+
+        int layout = GENERIC;
+        int[] intData = null;
+        byte[] byteData = null;
+        int scanline = 0;
+        int pixelStride = 1;
+        int[] bands = {0, 0, 0, 0};
+        int[] colors = null;
+
+        if (plainSrgb && cm instanceof DirectColorModel && sm instanceof SinglePixelPackedSampleModel
+                && db instanceof DataBufferInt) {
+            int[] masks = ((SinglePixelPackedSampleModel) sm).getBitMasks();
+            if (Arrays.equals(masks, ARGB_MASKS) || Arrays.equals(masks, RGB_MASKS)) {
+                layout = (masks.length == 4) ? INT_ARGB : INT_RGB;
+                intData = ((DataBufferInt) db).getData();
+                scanline = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+            }
+        } else if (plainSrgb && cm instanceof ComponentColorModel && sm instanceof ComponentSampleModel
+                && db instanceof DataBufferByte) {
+            ComponentSampleModel csm = (ComponentSampleModel) sm;
+            // TYPE_3BYTE_BGR/4BYTE_ABGR store B,G,R / A,B,G,R while compatible rasters of the
+            // same ColorModel store R,G,B(,A), so accept any packed permutation of the bands
+            int[] offsets = csm.getBandOffsets();
+            int n = offsets.length;
+            int[] sorted = offsets.clone();
+            Arrays.sort(sorted);
+            boolean packed = (n == 3 || n == 4) && csm.getPixelStride() == n
+                    && cm.getNumComponents() == n && cm.hasAlpha() == (n == 4)
+                    && cm.getPixelSize() == 8 * n && sorted[0] == 0 && sorted[n - 1] == n - 1;
+            for (int i = 1; packed && i < n; i++) {
+                packed = sorted[i] != sorted[i - 1];
+            }
+            if (packed) {
+                layout = (n == 3) ? BYTE_RGB : BYTE_RGBA;
+                byteData = ((DataBufferByte) db).getData();
+                scanline = csm.getScanlineStride();
+                pixelStride = n;
+                System.arraycopy(offsets, 0, bands, 0, n);
+            }
+        } else if (cm instanceof IndexColorModel icm && cm.getColorSpace().isCS_sRGB() && !icm.hasAlpha()
+                && db instanceof DataBufferByte && db.getNumBanks() == 1) {
+            // Narrow outputs (RasterPool): a gray ramp one byte per pixel, or two colours one bit
+            int[] map = new int[icm.getMapSize()];
+            icm.getRGBs(map);
+            if (sm instanceof ComponentSampleModel csm && csm.getNumBands() == 1 && csm.getPixelStride() == 1
+                    && icm.getPixelSize() == 8 && isGrayRamp(map)) {
+                layout = BYTE_GRAY;
+                byteData = ((DataBufferByte) db).getData();
+                scanline = csm.getScanlineStride();
+                colors = map;
+            } else if (sm instanceof MultiPixelPackedSampleModel mpp && mpp.getPixelBitStride() == 1
+                    && mpp.getDataBitOffset() == 0 && raster.getSampleModelTranslateX() == 0 && map.length <= 2) {
+                layout = BIT_2;
+                byteData = ((DataBufferByte) db).getData();
+                scanline = mpp.getScanlineStride();
+                colors = new int[]{map[0], map[map.length - 1]};
+            }
+        }
+
+        this.layout = layout;
+        this.intData = intData;
+        this.byteData = byteData;
+        this.scanline = scanline;
+        this.pixelStride = pixelStride;
+        this.rOff = bands[0];
+        this.gOff = bands[1];
+        this.bOff = bands[2];
+        this.aOff = bands[3];
+        this.colors = colors;
+        // Sub-images share the parent's buffer, so account for the raster translation
+        this.base = (layout == GENERIC) ? 0
+                : db.getOffset() - raster.getSampleModelTranslateY() * scanline
+                                 - raster.getSampleModelTranslateX() * pixelStride;
+    }
+
+    // 256 entries, entry i being gray i
+    private static boolean isGrayRamp(int[] map) {
+        if (map.length != 256) {
+            return false;
+        }
+        for (int i = 0; i < 256; i++) {
+            if ((map[i] & 0xFFFFFF) != i * 0x010101) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Layout code (generic, int or byte layouts); equal codes mean equal access cost per pixel
+    int layout() {
+        return layout;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    // True when the backing int[] already holds packed ARGB that kernels can read in place.
+    boolean canReadInPlace() {
+        return layout == INT_ARGB;
+    }
+
+    // True when kernels can store packed ARGB straight into the backing int[].
+    boolean canWriteInPlace() {
+        return layout == INT_ARGB || layout == INT_RGB;
+    }
+
+    // Pixels per byte of the backing array in packed-bit layouts, else 1. Concurrent writers
+    // must split rows at multiples of this, or they would update the same byte.
+    int columnAlignment() {
+        return (layout == BIT_2) ? 8 : 1;
+    }
+
+    int[] packedData() {
+        return intData;
+    }
+
+    int offset(int x, int y) {
+        return base + y * scanline + x * pixelStride;
+    }
+
+    // Reads w pixels starting at (x, y) into argb[0..w) as packed ARGB.
+    void read(int x, int y, int w, int[] argb) {
+        switch (layout) {
+            case INT_ARGB -> System.arraycopy(intData, offset(x, y), argb, 0, w);
+            case INT_RGB -> {
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++) {
+                    argb[k] = intData[i + k] | 0xFF000000;
+                }
+            }
+            case BYTE_RGB -> {
+                byte[] data = byteData;
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++, i += 3) {
+                    argb[k] = 0xFF000000
+                            | (data[i + rOff] & 0xFF) << 16
+                            | (data[i + gOff] & 0xFF) << 8
+                            | (data[i + bOff] & 0xFF);
+                }
+            }
+            case BYTE_RGBA -> {
+                byte[] data = byteData;
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++, i += 4) {
+                    argb[k] = (data[i + aOff] & 0xFF) << 24
+                            | (data[i + rOff] & 0xFF) << 16
+                            | (data[i + gOff] & 0xFF) << 8
+                            | (data[i + bOff] & 0xFF);
+                }
+            }
+            case BYTE_GRAY -> {
+                byte[] data = byteData;
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++) {
+                    argb[k] = 0xFF000000 | (data[i + k] & 0xFF) * 0x010101;
+                }
+            }
+            case BIT_2 -> {
+                byte[] data = byteData;
+                int row = base + y * scanline;
+                int c0 = colors[0], c1 = colors[1];
+                for (int k = 0; k < w; k++) {
+                    int px = x + k;
+                    argb[k] = (((data[row + (px >>> 3)] >> (7 - (px & 7))) & 1) == 0) ? c0 : c1;
+                }
+            }
+            default -> image.getRGB(x, y, w, 1, argb, 0, w);
+        }
+    }
+
+    // Writes argb[0..w) to the w pixels starting at (x, y).
+    void write(int x, int y, int w, int[] argb) {
+        switch (layout) {
+            case INT_ARGB, INT_RGB -> System.arraycopy(argb, 0, intData, offset(x, y), w);
+            case BYTE_RGB -> {
+                byte[] data = byteData;
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++, i += 3) {
+                    int p = argb[k];
+                    data[i + rOff] = (byte) (p >> 16);
+                    data[i + gOff] = (byte) (p >> 8);
+                    data[i + bOff] = (byte) p;
+                }
+            }
+            case BYTE_RGBA -> {
+                byte[] data = byteData;
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++, i += 4) {
+                    int p = argb[k];
+                    data[i + rOff] = (byte) (p >> 16);
+                    data[i + gOff] = (byte) (p >> 8);
+                    data[i + bOff] = (byte) p;
+                    data[i + aOff] = (byte) (p >>> 24);
+                }
+            }
+            case BYTE_GRAY -> {
+                byte[] data = byteData;
+                int i = offset(x, y);
+                for (int k = 0; k < w; k++) {
+                    int p = argb[k];
+                    // Luma weights summing to 256, exact for gray pixels
+                    data[i + k] = (byte) ((77 * ((p >> 16) & 0xFF) + 150 * ((p >> 8) & 0xFF) + 29 * (p & 0xFF)) >> 8);
+                }
+            }
+            case BIT_2 -> writeBits(x, y, w, argb);
+            default -> image.setRGB(x, y, w, 1, argb, 0, w);
+        }
+    }
+
+    // A pixel is stored as the second colour exactly when it is that colour, else as the first.
+    // Whole bytes are assembled in a register; only partial bytes at the ends are merged.
+    private void writeBits(int x, int y, int w, int[] argb) {
+        byte[] data = byteData;
+        int row = base + y * scanline;
+        int c1 = colors[1] & 0xFFFFFF;
+        int k = 0;
+        while (k < w) {
+            int px = x + k;
+            int bit = px & 7;
+            int n = Math.min(8 - bit, w - k);
+            int bits = 0;
+            for (int j = 0; j < n; j++) {
+                bits = (bits << 1) | ((((argb[k + j] & 0xFFFFFF) ^ c1) - 1) >>> 31);
+            }
+            int shift = 8 - bit - n;
+            int at = row + (px >>> 3);
+            if (n == 8) {
+                data[at] = (byte) bits;
+            } else {
+                int keep = ~(((1 << n) - 1) << shift) & 0xFF;
+                data[at] = (byte) ((data[at] & keep) | (bits << shift));
+            }
+            k += n;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,300 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Coarse-to-fine segmentation for a quick preview. Level L samples every 2^L-th pixel of every
+// 2^L-th row; the coarsest level (1/16 scale) reads 1/256 of the image and is shown at once,
+// then every finer level is shown as it completes, down to the full-resolution output.
+//
+// Going from level L + 1 to level L, each cell between four neighbouring coarse samples is
+// either settled, when the four results agree and (for threshold kernels) their keys are at
+// least `margin` away from the threshold, or ambiguous. Settled cells pass their result on to
+// the new samples inside them without reading the image; only samples in ambiguous cells are
+// read and segmented. Away from segment edges and near-threshold gradients the image is thus
+// never read at full resolution. The price is that detail smaller than the sample spacing
+// inside a settled cell is lost, so the output is a preview-quality approximation; Result
+// reports how much of it was actually computed.
+//
+// Every level runs on the engine's pool, split into bands of rows.
+public final class ProgressiveSegmenter {
+    public static final int COARSEST_LEVEL = 4;
+    public static final int DEFAULT_MARGIN = 16;
+
+    private ProgressiveSegmenter() {
+    }
+
+    // Timing and work per level, coarsest first
+    public static final class Result {
+        private final int[] levels;
+        private final long[] shownNanos;     // since the start, when each level was complete
+        private final long[] samples;
+        private final long[] computed;       // samples read and segmented, the rest inherited
+
+        Result(int coarsest) {
+            int n = coarsest + 1;
+            levels = new int[n];
+            shownNanos = new long[n];
+            samples = new long[n];
+            computed = new long[n];
+        }
+
+        public long firstPreviewNanos() {
+            return shownNanos[0];
+        }
+
+        public long totalNanos() {
+            return shownNanos[shownNanos.length - 1];
+        }
+
+        // Fraction of the full-resolution pixels that were read and segmented. Every pixel is
+        // segmented at one level at most; finer levels copy the samples they share with it.
+        public double computedFraction() {
+            long pixels = samples[samples.length - 1];
+            return (pixels == 0) ? 1.0 : (double) Arrays.stream(computed).sum() / pixels;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT, "Progressive: 1/%d preview after %.2f ms, full resolution after %.2f ms "
+                            + "(%.1f%% of pixels segmented, the rest inherited from settled cells)%n",
+                    1 << levels[0], firstPreviewNanos() / 1e6, totalNanos() / 1e6, 100 * computedFraction()));
+            for (int i = 0; i < levels.length; i++) {
+                text.append(String.format(Locale.ROOT, "  1/%-3d %10d samples, %10d segmented, done at %8.2f ms%n",
+                        1 << levels[i], samples[i], computed[i], shownNanos[i] / 1e6));
+            }
+            return text.toString();
+        }
+    }
+
+    // The sampled results of one level: the ARGB kernel outputs and, per sample, a tag that is
+    // the output colour where the sample is clear of the threshold and -1 where it is not
+    private static final class Level {
+        private final int width;
+        private final int height;
+        private final BufferedImage image;
+        private final int[] values;
+        private final int[] tags;
+
+        Level(int shift, int imageWidth, int imageHeight) {
+            this.width = ((imageWidth - 1) >> shift) + 1;
+            this.height = ((imageHeight - 1) >> shift) + 1;
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            this.values = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            this.tags = new int[width * height];
+        }
+    }
+
+    // Segments input into output from the coarsest level down, showing every level on the panel
+    // (may be null) as soon as it is complete. margin is in key units (0-255).
+    public static Result segment(Parralel_segmenter engine, BufferedImage input, BufferedImage output,
+                                 SegmentationKernel kernel, int margin, LiveImageDisplay panel) {
+        if (input.getWidth() != output.getWidth() || input.getHeight() != output.getHeight()) {
+            throw new IllegalArgumentException("Output must be the size of the input");
+        }
+        long start = System.nanoTime();
+        PixelRows in = new PixelRows(input);
+        PixelRows out = new PixelRows(output);
+        int width = in.width();
+        int height = in.height();
+        boolean keyed = ThresholdIndex.supports(kernel);
+        int bound = keyed ? bound(kernel) : 0;
+        // No level coarser than the image itself
+        int coarsest = Math.min(COARSEST_LEVEL, 31 - Integer.numberOfLeadingZeros(Math.max(1, Math.max(width, height))));
+        Result result = new Result(coarsest);
+
+        Level parent = null;
+        for (int shift = coarsest, i = 0; shift >= 0; shift--, i++) {
+            Level level = (shift == 0) ? null : new Level(shift, width, height);
+            int levelWidth = ((width - 1) >> shift) + 1;
+            int levelHeight = ((height - 1) >> shift) + 1;
+            Pass pass = new Pass(in, out, kernel, keyed, bound, margin, parent, level, shift, levelWidth);
+            int bandRows = Decomposition.rows().leafSize(levelWidth, levelHeight, engine.parallelism(), () -> 0)[1];
+            int bands = (levelHeight + bandRows - 1) / bandRows;
+            long[] computed = new long[bands];
+            engine.invokeBands(0, bands, band -> {
+                computed[band] = pass.rows(band * bandRows, Math.min(levelHeight, (band + 1) * bandRows));
+            });
+            result.levels[i] = shift;
+            result.samples[i] = (long) levelWidth * levelHeight;
+            result.computed[i] = Arrays.stream(computed).sum();
+            result.shownNanos[i] = System.nanoTime() - start;
+            if (panel != null && level != null) {
+                panel.setImage(level.image);
+            } else if (panel != null) {
+                // output may be the image the panel showed before, with a rendition of its old
+                // contents: report the level as written, like the engines do, so it is redrawn
+                panel.setImage(output);
+                SegmentationProgress progress = panel.startProgress();
+                progress.rowsDone(0, 0, width, height);
+                progress.finish();
+            }
+            parent = level;
+        }
+        return result;
+    }
+
+    // Smallest key that is foreground: grayscale keeps key >= threshold, dominant key > threshold
+    private static int bound(SegmentationKernel kernel) {
+        return (kernel instanceof SegmentationKernels.Grayscale gray)
+                ? gray.threshold() : ((SegmentationKernels.DominantChannel) kernel).threshold() + 1;
+    }
+
+    // Computes the rows of one level from its parent (null for the coarsest level)
+    private static final class Pass {
+        private final PixelRows in;
+        private final PixelRows out;
+        private final SegmentationKernel kernel;
+        private final boolean keyed;
+        private final Level parent;
+        private final Level level; // null at full resolution, where rows go straight to out
+        private final int shift;
+        private final int width;
+        private final boolean[] clearKeys; // key + 1 -> at least margin away from the threshold
+
+        Pass(PixelRows in, PixelRows out, SegmentationKernel kernel, boolean keyed, int bound, int margin,
+             Level parent, Level level, int shift, int width) {
+            this.in = in;
+            this.out = out;
+            this.kernel = kernel;
+            this.keyed = keyed;
+            this.parent = parent;
+            this.level = level;
+            this.shift = shift;
+            this.width = width;
+            this.clearKeys = new boolean[257];
+            for (int key = -1; key < 256; key++) {
+                // -1 (never foreground) is always clear
+                clearKeys[key + 1] = key < 0 || key >= bound + margin || key < bound - margin;
+            }
+        }
+
+        // Fills sample rows [from, to) and returns how many samples were read and segmented
+        long rows(int from, int to) {
+            int[] row = (level == null && !out.canWriteInPlace()) ? new int[width] : null;
+            int[] pending = new int[width];
+            boolean[] settled = (parent == null) ? null : new boolean[parent.width];
+            int settledFor = -1;
+            long computed = 0;
+            for (int y = from; y < to; y++) {
+                if (parent != null && (y >> 1) != settledFor) {
+                    settledFor = y >> 1;
+                    settledCells(settledFor, settled);
+                }
+                computed += row(y, settled, pending, row);
+            }
+            return computed;
+        }
+
+        // Fills sample row y; returns how many samples were read and segmented
+        private int row(int y, boolean[] settledCells, int[] pending, int[] row) {
+            int[] values;
+            int valuesOff;
+            if (level != null) {
+                values = level.values;
+                valuesOff = y * width;
+            } else if (row == null) {
+                values = out.packedData();
+                valuesOff = out.offset(0, y);
+            } else {
+                values = row;
+                valuesOff = 0;
+            }
+            int[] tags = (level != null) ? level.tags : null;
+            int tagsOff = y * width;
+            int count = 0;
+
+            if (parent == null) {
+                for (int x = 0; x < width; x++) {
+                    pending[count++] = x;
+                }
+            } else {
+                int[] pv = parent.values;
+                int[] pt = parent.tags;
+                int top = (y >> 1) * parent.width;
+                boolean odd = (y & 1) != 0;
+                for (int cx = 0; cx < parent.width; cx++) {
+                    int x = cx << 1;
+                    int at = top + cx;
+                    boolean settled = settledCells[cx];
+                    // An even sample of an even row is the parent sample itself
+                    if (settled || !odd) {
+                        values[valuesOff + x] = pv[at];
+                        if (tags != null) {
+                            tags[tagsOff + x] = pt[at];
+                        }
+                    } else {
+                        pending[count++] = x;
+                    }
+                    if (x + 1 < width) {
+                        if (settled) {
+                            values[valuesOff + x + 1] = pv[at];
+                            if (tags != null) {
+                                tags[tagsOff + x + 1] = pt[at];
+                            }
+                        } else {
+                            pending[count++] = x + 1;
+                        }
+                    }
+                }
+            }
+
+            if (count > 0) {
+                int[] pixels = new int[count];
+                int py = y << shift;
+                if (in.canReadInPlace()) {
+                    int[] src = in.packedData();
+                    int rowOff = in.offset(0, py);
+                    for (int i = 0; i < count; i++) {
+                        pixels[i] = src[rowOff + (pending[i] << shift)];
+                    }
+                } else {
+                    int[] one = new int[1];
+                    for (int i = 0; i < count; i++) {
+                        in.read(pending[i] << shift, py, 1, one);
+                        pixels[i] = one[0];
+                    }
+                }
+                int[] segmented = new int[count];
+                kernel.segmentRow(pixels, 0, segmented, 0, count);
+                for (int i = 0; i < count; i++) {
+                    values[valuesOff + pending[i]] = segmented[i];
+                }
+                if (tags != null) {
+                    int[] keys = new int[count];
+                    if (keyed) {
+                        ThresholdIndex.keyRow(kernel, pixels, keys, count);
+                    }
+                    boolean[] clear = clearKeys;
+                    for (int i = 0; i < count; i++) {
+                        tags[tagsOff + pending[i]] = (!keyed || clear[keys[i] + 1]) ? segmented[i] & 0xFFFFFF : -1;
+                    }
+                }
+            }
+
+            if (row != null) {
+                out.write(0, y, width, row);
+            }
+            return count;
+        }
+
+        // For each cell of parent row cy: true when the four parent samples around it are clear
+        // of the threshold and agree
+        private void settledCells(int cy, boolean[] settled) {
+            int[] t = parent.tags;
+            int parentWidth = parent.width;
+            int top = cy * parentWidth;
+            int below = Math.min(cy + 1, parent.height - 1) * parentWidth;
+            for (int cx = 0; cx < parentWidth; cx++) {
+                int a = top + cx;
+                int right = (cx + 1 < parentWidth) ? 1 : 0;
+                int c = below + cx;
+                int tag = t[a];
+                settled[cx] = tag >= 0 && t[a + right] == tag && t[c] == tag && t[c + right] == tag;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,215 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Output images for segmentation runs, recycled between runs instead of allocated (or copied
+// from the input) every time, and stored in the narrowest type that holds what the kernel
+// paints (SegmentationKernel.outputPalette()):
+//  - two colours (grayscale, red, green): TYPE_BYTE_BINARY with those colours, 1 bit a pixel;
+//  - grays only (multi-level thresholds): TYPE_BYTE_INDEXED over a gray ramp, 1 byte a pixel
+//    (TYPE_BYTE_GRAY would store linear gray, so mid-grays would not come back unchanged);
+//  - anything else: TYPE_INT_ARGB if the input has alpha, else TYPE_INT_RGB.
+// Narrow outputs do not keep the input's alpha. PixelRows reads and writes all of these
+// without going through the ColorModel.
+//
+// release() hands an image back once nothing refers to it any more; acquire() returns it for
+// the next request of the same shape (size, type and palette), cleared to the first palette
+// colour, as a new image would be. Released images beyond the pool's byte budget are dropped.
+public final class RasterPool {
+    // Default budget of shared(); override with -Dsegmenter.poolBytes=...
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("segmenter.poolBytes", 128L * 1024 * 1024);
+    private static final IndexColorModel GRAY_RAMP;
+    private static volatile RasterPool shared;
+
+    static {
+        byte[] ramp = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            ramp[i] = (byte) i;
+        }
+        GRAY_RAMP = new IndexColorModel(8, 256, ramp, ramp, ramp);
+    }
+
+    private final long maxBytes;
+    private final Map<Shape, ArrayDeque<BufferedImage>> free = new HashMap<>();
+    private long freeBytes;
+    private long allocated;
+    private long reused;
+    private long dropped;
+
+    public RasterPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Pool size must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public static RasterPool shared() {
+        RasterPool pool = shared;
+        if (pool == null) {
+            synchronized (RasterPool.class) {
+                if (shared == null) {
+                    shared = new RasterPool(DEFAULT_MAX_BYTES);
+                }
+                pool = shared;
+            }
+        }
+        return pool;
+    }
+
+    // Size, image type and (indexed types) palette of an image
+    private static final class Shape {
+        private final int width;
+        private final int height;
+        private final int type;
+        private final int[] palette; // null for direct colour types
+
+        Shape(int width, int height, int type, int[] palette) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.palette = palette;
+        }
+
+        static Shape of(BufferedImage image) {
+            int[] palette = null;
+            if (image.getColorModel() instanceof IndexColorModel icm) {
+                palette = new int[icm.getMapSize()];
+                icm.getRGBs(palette);
+            }
+            return new Shape(image.getWidth(), image.getHeight(), image.getType(), palette);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Shape other && other.width == width && other.height == height
+                    && other.type == type && Arrays.equals(other.palette, palette);
+        }
+
+        @Override
+        public int hashCode() {
+            return (width * 31 + height) * 31 + type + Arrays.hashCode(palette);
+        }
+    }
+
+    // An output for segmenting input with kernel: the input's size, the narrowest type for the
+    // kernel's palette, recycled when an image of that shape has been released.
+    public BufferedImage acquire(BufferedImage input, SegmentationKernel kernel) {
+        return acquire(input, kernel.outputPalette());
+    }
+
+    // Same, for a kernel chosen later whose palette is already known (null if it keeps colours)
+    public BufferedImage acquire(BufferedImage input, int[] colors) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        Shape shape;
+        if (colors != null && colors.length <= 2) {
+            int c0 = 0xFF000000 | colors[0];
+            int c1 = 0xFF000000 | colors[colors.length - 1];
+            shape = new Shape(width, height, BufferedImage.TYPE_BYTE_BINARY, new int[]{c0, c1});
+        } else if (colors != null && isGray(colors)) {
+            int[] ramp = new int[256];
+            GRAY_RAMP.getRGBs(ramp);
+            shape = new Shape(width, height, BufferedImage.TYPE_BYTE_INDEXED, ramp);
+        } else {
+            int type = input.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+            shape = new Shape(width, height, type, null);
+        }
+        return acquire(shape);
+    }
+
+    private BufferedImage acquire(Shape shape) {
+        BufferedImage image = null;
+        synchronized (this) {
+            ArrayDeque<BufferedImage> images = free.get(shape);
+            if (images != null) {
+                image = images.poll();
+                if (images.isEmpty()) {
+                    free.remove(shape);
+                }
+            }
+            if (image != null) {
+                freeBytes -= MemoryAccounting.bytesOf(image);
+                reused++;
+            } else {
+                allocated++;
+            }
+        }
+        if (image != null) {
+            // Index 0 everywhere: the background colour of the palettes, black for the direct types
+            DataBuffer buffer = image.getRaster().getDataBuffer();
+            if (buffer instanceof DataBufferInt ints) {
+                Arrays.fill(ints.getData(), 0);
+            } else {
+                Arrays.fill(((DataBufferByte) buffer).getData(), (byte) 0);
+            }
+            return image;
+        }
+        return switch (shape.type) {
+            case BufferedImage.TYPE_BYTE_BINARY -> new BufferedImage(shape.width, shape.height, shape.type,
+                    palette(shape.palette));
+            case BufferedImage.TYPE_BYTE_INDEXED -> new BufferedImage(shape.width, shape.height, shape.type, GRAY_RAMP);
+            default -> new BufferedImage(shape.width, shape.height, shape.type);
+        };
+    }
+
+    // Hands an image back for reuse; the caller must not touch it afterwards. Images of types
+    // acquire() never returns are ignored.
+    public void release(BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+        switch (image.getType()) {
+            case BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_INDEXED,
+                    BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB -> { }
+            default -> {
+                return;
+            }
+        }
+        long bytes = MemoryAccounting.bytesOf(image);
+        synchronized (this) {
+            if (freeBytes + bytes > maxBytes) {
+                dropped++;
+                return;
+            }
+            free.computeIfAbsent(Shape.of(image), shape -> new ArrayDeque<>()).add(image);
+            freeBytes += bytes;
+        }
+    }
+
+    private static boolean isGray(int[] colors) {
+        for (int c : colors) {
+            int r = (c >> 16) & 0xFF;
+            if (((c >> 8) & 0xFF) != r || (c & 0xFF) != r) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IndexColorModel palette(int[] colors) {
+        byte[] r = new byte[colors.length];
+        byte[] g = new byte[colors.length];
+        byte[] b = new byte[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            r[i] = (byte) (colors[i] >> 16);
+            g[i] = (byte) (colors[i] >> 8);
+            b[i] = (byte) colors[i];
+        }
+        return new IndexColorModel(1, colors.length, r, g, b);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "%d outputs allocated, %d reused, %d dropped, %s pooled",
+                allocated, reused, dropped, MemoryAccounting.formatBytes(freeBytes));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,432 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Segmentation results keyed by the content of the input raster and the variant of the run
+// (output kind, kernel name with its parameters, cleanup, ...), so repeated runs on the same
+// image and settings are served without segmenting again.
+//
+// The memory tier holds ARGB outputs and masks, bounded by bytes and evicted least recently
+// used first. The optional disk tier keeps masks (1 bit per pixel, deflated) in a directory,
+// one file per key, so they survive evictions and restarts. Hits, misses and evictions are
+// counted (stats()).
+//
+// The content hash reads every pixel once, in row bands on the engine's pool. The hash of an
+// image is remembered for as long as the image is reachable, so callers that segment one
+// image repeatedly (the GUI) pay for it once; an image must not be modified after it has been
+// hashed, or forget() must be called.
+public final class ResultCache {
+    // Default memory budget of shared(); override with -Dsegmenter.cacheBytes=...
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("segmenter.cacheBytes", 256L * 1024 * 1024);
+    private static final int DISK_MAGIC = 0x53524331; // "SRC1"
+    private static volatile ResultCache shared;
+
+    private final long maxBytes;
+    private final Path diskDir; // null without a disk tier
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<BufferedImage, Long> hashes = new WeakHashMap<>();
+    private long bytes;
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+    private long diskErrors;
+
+    // A cache of at most maxBytes in memory, and masks on disk under diskDir (null for none).
+    public ResultCache(long maxBytes, Path diskDir) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.diskDir = diskDir;
+        if (diskDir != null) {
+            try {
+                Files.createDirectories(diskDir);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot use cache directory " + diskDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Process-wide memory-only cache of DEFAULT_MAX_BYTES
+    public static ResultCache shared() {
+        ResultCache cache = shared;
+        if (cache == null) {
+            synchronized (ResultCache.class) {
+                if (shared == null) {
+                    shared = new ResultCache(DEFAULT_MAX_BYTES, null);
+                }
+                cache = shared;
+            }
+        }
+        return cache;
+    }
+
+    // Identifies one result: the input's content hash and size and the run's variant
+    public static final class Key {
+        private final long contentHash;
+        private final int width;
+        private final int height;
+        private final String variant;
+
+        Key(long contentHash, int width, int height, String variant) {
+            this.contentHash = contentHash;
+            this.width = width;
+            this.height = height;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && other.contentHash == contentHash && other.width == width
+                    && other.height == height && other.variant.equals(variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(contentHash) * 31 + variant.hashCode();
+        }
+
+        // File name in the disk tier; the variant is stored in the file and checked on load
+        String fileName() {
+            return String.format(Locale.ROOT, "%016x-%dx%d-%08x.mask", contentHash, width, height, variant.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%016x %dx%d %s", contentHash, width, height, variant);
+        }
+    }
+
+    // A cached result: packed ARGB rows or a mask
+    private static final class Entry {
+        private final int[] argb;
+        private final BinaryMask mask;
+
+        Entry(int[] argb, BinaryMask mask) {
+            this.argb = argb;
+            this.mask = mask;
+        }
+
+        long bytes() {
+            return (argb != null) ? 4L * argb.length : mask.sizeInBytes();
+        }
+    }
+
+    // Key of the run `variant` on input, hashing the input on the engine's pool unless its hash
+    // is already known.
+    public Key key(Parralel_segmenter engine, BufferedImage input, String variant) {
+        Long hash;
+        synchronized (this) {
+            hash = hashes.get(input);
+        }
+        if (hash == null) {
+            hash = contentHash(engine, input);
+            synchronized (this) {
+                hashes.put(input, hash);
+            }
+        }
+        return new Key(hash, input.getWidth(), input.getHeight(), variant);
+    }
+
+    // Variant of an ARGB run of kernel, also used by callers that segment elsewhere (the
+    // sequential path) but share the cache with the engine
+    static String imageVariant(SegmentationKernel kernel) {
+        return "argb:" + kernelVariant(kernel);
+    }
+
+    static String maskVariant(SegmentationKernel kernel, Morphology cleanup) {
+        return "mask:" + kernelVariant(kernel) + ((cleanup == null) ? "" : "+" + cleanup);
+    }
+
+    // Kernel names carry their parameters, except the fitted palette of a k-means kernel
+    private static String kernelVariant(SegmentationKernel kernel) {
+        if (kernel instanceof SegmentationKernels.NearestCentroid centroids) {
+            StringBuilder text = new StringBuilder(kernel.name());
+            for (int color : centroids.palette()) {
+                text.append(String.format(Locale.ROOT, ",%06x", color));
+            }
+            return text.toString();
+        }
+        return kernel.name();
+    }
+
+    // Drops the remembered hash of an image that is about to be modified
+    public synchronized void forget(BufferedImage input) {
+        hashes.remove(input);
+    }
+
+    // 64-bit hash of the packed ARGB pixels: rows are hashed in bands on the pool, each with
+    // four independent lanes so the multiply chains overlap, and the row hashes folded in order.
+    public static long contentHash(Parralel_segmenter engine, BufferedImage input) {
+        PixelRows in = new PixelRows(input);
+        int width = in.width();
+        int height = in.height();
+        long[] rowHashes = new long[height];
+        int bandRows = Decomposition.rows().leafSize(width, height, engine.parallelism(), () -> 0)[1];
+        int bands = (height + bandRows - 1) / bandRows;
+        engine.invokeBands(0, bands, band -> {
+            int[] row = in.canReadInPlace() ? null : new int[width];
+            for (int y = band * bandRows; y < Math.min(height, (band + 1) * bandRows); y++) {
+                int[] src = row;
+                int off = 0;
+                if (row == null) {
+                    src = in.packedData();
+                    off = in.offset(0, y);
+                } else {
+                    in.read(0, y, width, row);
+                }
+                rowHashes[y] = hashRow(src, off, width);
+            }
+        });
+        long hash = mix(width * 0x100000001L + height);
+        for (long rowHash : rowHashes) {
+            hash = mix(hash ^ rowHash);
+        }
+        return hash;
+    }
+
+    private static long hashRow(int[] src, int off, int width) {
+        long h0 = 0x9E3779B97F4A7C15L, h1 = 0xC2B2AE3D27D4EB4FL, h2 = 0x165667B19E3779F9L, h3 = 0x27D4EB2F165667C5L;
+        int x = 0;
+        for (; x + 4 <= width; x += 4) {
+            h0 = (h0 ^ src[off + x]) * 0xFF51AFD7ED558CCDL;
+            h1 = (h1 ^ src[off + x + 1]) * 0xFF51AFD7ED558CCDL;
+            h2 = (h2 ^ src[off + x + 2]) * 0xFF51AFD7ED558CCDL;
+            h3 = (h3 ^ src[off + x + 3]) * 0xFF51AFD7ED558CCDL;
+        }
+        for (; x < width; x++) {
+            h0 = (h0 ^ src[off + x]) * 0xFF51AFD7ED558CCDL;
+        }
+        return mix(h0) ^ Long.rotateLeft(mix(h1), 16) ^ Long.rotateLeft(mix(h2), 32) ^ Long.rotateLeft(mix(h3), 48);
+    }
+
+    // Murmur3 finaliser
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    // Whether key has an entry, in memory or (masks) on disk; not counted as a lookup and does
+    // not refresh the entry's recency
+    public boolean contains(Key key) {
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return true;
+            }
+        }
+        return diskDir != null && key.variant.startsWith("mask:") && Files.exists(diskDir.resolve(key.fileName()));
+    }
+
+    // Copies a cached ARGB result into output (the input's size); false on a miss
+    public boolean getImage(Key key, BufferedImage output) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || entry.argb == null) {
+                misses++;
+                return false;
+            }
+            hits++;
+        }
+        PixelRows out = new PixelRows(output);
+        int[] row = new int[key.width];
+        for (int y = 0; y < key.height; y++) {
+            System.arraycopy(entry.argb, y * key.width, row, 0, key.width);
+            out.write(0, y, key.width, row);
+        }
+        return true;
+    }
+
+    // Keeps a copy of an ARGB result
+    public void putImage(Key key, BufferedImage output) {
+        PixelRows out = new PixelRows(output);
+        int[] argb = new int[Math.multiplyExact(key.width, key.height)];
+        int[] row = new int[key.width];
+        for (int y = 0; y < key.height; y++) {
+            out.read(0, y, key.width, row);
+            System.arraycopy(row, 0, argb, y * key.width, key.width);
+        }
+        put(key, new Entry(argb, null));
+    }
+
+    // A copy of a cached mask, from memory or the disk tier, or null on a miss
+    public BinaryMask getMask(Key key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.mask != null) {
+                hits++;
+                return copy(entry.mask);
+            }
+        }
+        BinaryMask mask = (diskDir == null) ? null : readMask(key);
+        synchronized (this) {
+            if (mask == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+        }
+        put(key, new Entry(null, mask));
+        return copy(mask);
+    }
+
+    // Keeps a copy of a mask, in memory and in the disk tier
+    public void putMask(Key key, BinaryMask mask) {
+        BinaryMask copy = copy(mask);
+        put(key, new Entry(null, copy));
+        if (diskDir != null) {
+            writeMask(key, copy);
+        }
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.bytes() > maxBytes) {
+            return; // would evict everything and still not fit
+        }
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.bytes();
+        }
+        bytes += entry.bytes();
+        Iterator<Entry> lru = entries.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            bytes -= lru.next().bytes();
+            lru.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private static BinaryMask copy(BinaryMask mask) {
+        BinaryMask copy = new BinaryMask(mask.width(), mask.height());
+        System.arraycopy(mask.bits(), 0, copy.bits(), 0, mask.bits().length);
+        return copy;
+    }
+
+    private BinaryMask readMask(Key key) {
+        Path file = diskDir.resolve(key.fileName());
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new InflaterInputStream(raw, new Inflater(), 1 << 16))) {
+            if (in.readInt() != DISK_MAGIC || !in.readUTF().equals(key.variant)
+                    || in.readInt() != key.width || in.readInt() != key.height) {
+                return null; // another variant with the same file name
+            }
+            BinaryMask mask = new BinaryMask(key.width, key.height);
+            long[] bits = mask.bits();
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return mask;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            synchronized (this) {
+                diskErrors++;
+            }
+            return null;
+        }
+    }
+
+    private void writeMask(Key key, BinaryMask mask) {
+        Path file = diskDir.resolve(key.fileName());
+        try {
+            // Written aside and moved into place, so readers never see a partial file
+            Path temp = Files.createTempFile(diskDir, "mask", ".tmp");
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (OutputStream raw = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(raw, deflater, 1 << 16))) {
+                out.writeInt(DISK_MAGIC);
+                out.writeUTF(key.variant);
+                out.writeInt(key.width);
+                out.writeInt(key.height);
+                for (long word : mask.bits()) {
+                    out.writeLong(word);
+                }
+            } finally {
+                deflater.end();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            synchronized (this) {
+                diskErrors++;
+            }
+        }
+    }
+
+    // Counters since the cache was created
+    public static final class Stats {
+        private final long hits, diskHits, misses, evictions, diskErrors;
+        private final int entries;
+        private final long bytes, maxBytes;
+
+        Stats(long hits, long diskHits, long misses, long evictions, long diskErrors, int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.diskErrors = diskErrors;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long diskHits() {
+            return diskHits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public double hitRate() {
+            long lookups = hits + diskHits + misses;
+            return (lookups == 0) ? 0 : (double) (hits + diskHits) / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d hits (%d from disk), %d misses, %.0f%% hit rate, %d evictions, "
+                            + "%d entries in %s of %s%s",
+                    hits + diskHits, diskHits, misses, 100 * hitRate(), evictions, entries,
+                    MemoryAccounting.formatBytes(bytes), MemoryAccounting.formatBytes(maxBytes),
+                    (diskErrors == 0) ? "" : ", " + diskErrors + " disk errors");
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, diskHits, misses, evictions, diskErrors, entries.size(), bytes, maxBytes);
+    }
+}
\ No newline at end of file
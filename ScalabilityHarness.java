@@ -0,0 +1,590 @@
+package Project;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Headless scalability measurement: a sequential baseline plus every variant (rows, tiles, SIMD)
+// at every thread count, each with warm-up iterations followed by measured iterations. Reports
+// median/p90/p99 times, speed-up and efficiency against the sequential median, and fits a serial
+// fraction to each variant's speed-up curve (Amdahl for the fixed-size run, Gustafson as the
+// scaled-size reading of the same data). Used by the GUI and runnable from the command line.
+//
+// Usage: ScalabilityHarness <image> [--type grayscale] [--threshold 128] [--threads 1,2,4,max]
+//        [--warmup 3] [--iterations 10] [--variants rows,tiles,adaptive,simd,WxH] [--csv file] [--json file]
+public final class ScalabilityHarness {
+    public static final int DEFAULT_WARMUP = 3;
+    public static final int DEFAULT_ITERATIONS = 10;
+
+    private final BufferedImage image;
+    private final SegmentationKernel kernel;
+    private int warmup = DEFAULT_WARMUP;
+    private int iterations = DEFAULT_ITERATIONS;
+    private int[] threadCounts = defaultThreadCounts();
+    private final List<Variant> variants = new ArrayList<>();
+
+    // A parallel configuration measured at every thread count
+    public static final class Variant {
+        private final String name;
+        private final boolean simd;
+        private final Decomposition decomposition;
+
+        private Variant(String name, boolean simd, Decomposition decomposition) {
+            this.name = name;
+            this.simd = simd;
+            this.decomposition = decomposition;
+        }
+
+        public static Variant rows() {
+            return new Variant("rows", false, Decomposition.rows());
+        }
+
+        public static Variant tiles() {
+            return new Variant("tiles", false, Decomposition.autoTiles());
+        }
+
+        // Leaves sized from the measured per-pixel cost (Decomposition.adaptive())
+        public static Variant adaptive() {
+            return new Variant("adaptive", false, Decomposition.adaptive());
+        }
+
+        // Fixed leaf size, for granularity experiments
+        public static Variant fixed(int leafWidth, int leafHeight) {
+            return new Variant(leafWidth + "x" + leafHeight, false, Decomposition.tiles(leafWidth, leafHeight));
+        }
+
+        // Adaptive leaves with the vectorized kernel; only meaningful when VectorSegmenter.isAvailable()
+        public static Variant simd() {
+            return new Variant("simd", true, Decomposition.adaptive());
+        }
+
+        // rows, tiles, adaptive, simd, or a fixed leaf size such as 512x32
+        public static Variant forName(String name) {
+            int x = name.indexOf('x');
+            if (x > 0 && name.chars().allMatch(c -> c == 'x' || Character.isDigit(c))) {
+                return fixed(Integer.parseInt(name.substring(0, x)), Integer.parseInt(name.substring(x + 1)));
+            }
+            return switch (name) {
+                case "rows" -> rows();
+                case "tiles" -> tiles();
+                case "adaptive" -> adaptive();
+                case "simd" -> simd();
+                default -> throw new IllegalArgumentException("Unknown variant: " + name
+                        + " (expected rows, tiles, adaptive, simd or WxH)");
+            };
+        }
+
+        public String name() {
+            return name;
+        }
+    }
+
+    // The measured iterations of one variant at one thread count
+    public static final class Measurement {
+        private final String variant;
+        private final int threads;
+        private final double[] samplesMs; // sorted ascending
+        private final long allocatedBytesPerRun;
+        private double speedup = Double.NaN;
+
+        Measurement(String variant, int threads, double[] samplesMs, long allocatedBytesPerRun) {
+            this.variant = variant;
+            this.threads = threads;
+            this.allocatedBytesPerRun = allocatedBytesPerRun;
+            this.samplesMs = samplesMs.clone();
+            Arrays.sort(this.samplesMs);
+        }
+
+        public String variant() {
+            return variant;
+        }
+
+        public int threads() {
+            return threads;
+        }
+
+        public double[] samplesMs() {
+            return samplesMs.clone();
+        }
+
+        public double medianMs() {
+            int n = samplesMs.length;
+            return (n % 2 == 1) ? samplesMs[n / 2] : (samplesMs[n / 2 - 1] + samplesMs[n / 2]) / 2;
+        }
+
+        // Nearest-rank percentile, p in (0, 100]
+        public double percentileMs(double p) {
+            int rank = (int) Math.ceil(p / 100 * samplesMs.length);
+            return samplesMs[Math.max(0, Math.min(samplesMs.length, rank) - 1)];
+        }
+
+        public double p90Ms() {
+            return percentileMs(90);
+        }
+
+        public double p99Ms() {
+            return percentileMs(99);
+        }
+
+        public double meanMs() {
+            double sum = 0;
+            for (double sample : samplesMs) {
+                sum += sample;
+            }
+            return sum / samplesMs.length;
+        }
+
+        public double minMs() {
+            return samplesMs[0];
+        }
+
+        public double maxMs() {
+            return samplesMs[samplesMs.length - 1];
+        }
+
+        // Sequential median / this median; NaN for the baseline itself
+        public double speedup() {
+            return speedup;
+        }
+
+        public double efficiency() {
+            return speedup / threads;
+        }
+
+        // Mean bytes allocated per measured run by the caller and pool workers; -1 if unavailable
+        public long allocatedBytesPerRun() {
+            return allocatedBytesPerRun;
+        }
+    }
+
+    // Serial fraction fitted to one variant's speed-up curve by least squares.
+    // Amdahl:    S(n) = 1 / (f + (1 - f) / n)  =>  1/S - 1/n = f * (1 - 1/n)
+    // Gustafson: S(n) = n - f * (n - 1)        =>  n - S     = f * (n - 1)
+    // Speed-ups are taken relative to the variant's own 1-thread run when it was measured (so the
+    // fit reflects scaling, not SIMD or engine overhead), otherwise relative to the sequential run.
+    public static final class SerialFractionFit {
+        private final String variant;
+        private final double amdahl;
+        private final double gustafson;
+        private final int points;
+
+        SerialFractionFit(String variant, double amdahl, double gustafson, int points) {
+            this.variant = variant;
+            this.amdahl = amdahl;
+            this.gustafson = gustafson;
+            this.points = points;
+        }
+
+        public String variant() {
+            return variant;
+        }
+
+        public double amdahlSerialFraction() {
+            return amdahl;
+        }
+
+        public double gustafsonSerialFraction() {
+            return gustafson;
+        }
+
+        // Upper bound on speed-up implied by the Amdahl fit (infinite when f <= 0)
+        public double amdahlSpeedupLimit() {
+            return (amdahl > 0) ? 1 / amdahl : Double.POSITIVE_INFINITY;
+        }
+
+        // Thread counts above 1 that went into the fit; the fractions are NaN when this is 0
+        public int points() {
+            return points;
+        }
+    }
+
+    public static final class Report {
+        private final int width;
+        private final int height;
+        private final int imageType;
+        private final String kernelName;
+        private final int warmup;
+        private final int iterations;
+        private final Measurement baseline;
+        private final List<Measurement> runs;
+        private final List<SerialFractionFit> fits;
+
+        Report(BufferedImage image, String kernelName, int warmup, int iterations,
+               Measurement baseline, List<Measurement> runs, List<SerialFractionFit> fits) {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.imageType = image.getType();
+            this.kernelName = kernelName;
+            this.warmup = warmup;
+            this.iterations = iterations;
+            this.baseline = baseline;
+            this.runs = List.copyOf(runs);
+            this.fits = List.copyOf(fits);
+        }
+
+        public Measurement baseline() {
+            return baseline;
+        }
+
+        public List<Measurement> runs() {
+            return runs;
+        }
+
+        public List<SerialFractionFit> fits() {
+            return fits;
+        }
+
+        // Human-readable summary, as shown in the GUI's metrics area
+        public String toText() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "%dx%d image, %s, %d warm-up + %d measured iterations%n",
+                    width, height, kernelName, warmup, iterations));
+            sb.append(String.format(Locale.ROOT, "%-10s %7s %10s %10s %10s %8s %10s %10s%n",
+                    "Variant", "Threads", "Median ms", "p90 ms", "p99 ms", "Speed-up", "Efficiency", "Alloc/run"));
+            appendRow(sb, baseline);
+            for (Measurement run : runs) {
+                appendRow(sb, run);
+            }
+            for (SerialFractionFit fit : fits) {
+                if (fit.points() == 0) {
+                    continue;
+                }
+                double limit = fit.amdahlSpeedupLimit();
+                sb.append(String.format(Locale.ROOT, "%s: serial fraction %.4f (Amdahl, speed-up limit %s), %.4f (Gustafson)%n",
+                        fit.variant(), fit.amdahlSerialFraction(),
+                        Double.isInfinite(limit) ? "unbounded" : String.format(Locale.ROOT, "%.1fx", limit),
+                        fit.gustafsonSerialFraction()));
+            }
+            return sb.toString();
+        }
+
+        private static void appendRow(StringBuilder sb, Measurement m) {
+            boolean base = Double.isNaN(m.speedup());
+            sb.append(String.format(Locale.ROOT, "%-10s %7d %10.2f %10.2f %10.2f %8s %10s %10s%n",
+                    m.variant(), m.threads(), m.medianMs(), m.p90Ms(), m.p99Ms(),
+                    base ? "-" : String.format(Locale.ROOT, "%.2fx", m.speedup()),
+                    base ? "-" : String.format(Locale.ROOT, "%.1f%%", m.efficiency() * 100),
+                    m.allocatedBytesPerRun() < 0 ? "n/a" : MemoryAccounting.formatBytes(m.allocatedBytesPerRun())));
+        }
+
+        // One row per measurement; the sequential baseline comes first with empty speed-up columns
+        public String toCsv() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("variant,threads,iterations,median_ms,p90_ms,p99_ms,mean_ms,min_ms,max_ms,speedup,efficiency,alloc_bytes_per_run\n");
+            appendCsv(sb, baseline);
+            for (Measurement run : runs) {
+                appendCsv(sb, run);
+            }
+            return sb.toString();
+        }
+
+        private static void appendCsv(StringBuilder sb, Measurement m) {
+            sb.append(m.variant()).append(',').append(m.threads()).append(',').append(m.samplesMs.length);
+            for (double value : new double[] {m.medianMs(), m.p90Ms(), m.p99Ms(), m.meanMs(), m.minMs(), m.maxMs(),
+                    m.speedup(), m.efficiency()}) {
+                sb.append(',');
+                if (!Double.isNaN(value)) {
+                    sb.append(String.format(Locale.ROOT, "%.4f", value));
+                }
+            }
+            sb.append(',');
+            if (m.allocatedBytesPerRun() >= 0) {
+                sb.append(m.allocatedBytesPerRun());
+            }
+            sb.append('\n');
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\n");
+            sb.append(String.format(Locale.ROOT, "  \"image\": {\"width\": %d, \"height\": %d, \"type\": %d},%n",
+                    width, height, imageType));
+            sb.append("  \"kernel\": \"").append(kernelName.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\n");
+            sb.append(String.format(Locale.ROOT, "  \"warmup\": %d,%n  \"iterations\": %d,%n  \"availableProcessors\": %d,%n",
+                    warmup, iterations, Runtime.getRuntime().availableProcessors()));
+            sb.append("  \"baseline\": ");
+            appendJson(sb, baseline);
+            sb.append(",\n  \"runs\": [");
+            for (int i = 0; i < runs.size(); i++) {
+                sb.append(i == 0 ? "\n    " : ",\n    ");
+                appendJson(sb, runs.get(i));
+            }
+            sb.append("\n  ],\n  \"fits\": [");
+            for (int i = 0; i < fits.size(); i++) {
+                SerialFractionFit fit = fits.get(i);
+                sb.append(i == 0 ? "\n    " : ",\n    ");
+                sb.append("{\"variant\": \"").append(fit.variant()).append('"')
+                  .append(", \"points\": ").append(fit.points())
+                  .append(", \"amdahlSerialFraction\": ").append(json(fit.amdahlSerialFraction()))
+                  .append(", \"amdahlSpeedupLimit\": ").append(json(fit.amdahlSpeedupLimit()))
+                  .append(", \"gustafsonSerialFraction\": ").append(json(fit.gustafsonSerialFraction()))
+                  .append('}');
+            }
+            sb.append("\n  ]\n}\n");
+            return sb.toString();
+        }
+
+        private static void appendJson(StringBuilder sb, Measurement m) {
+            sb.append("{\"variant\": \"").append(m.variant()).append('"')
+              .append(", \"threads\": ").append(m.threads())
+              .append(", \"medianMs\": ").append(json(m.medianMs()))
+              .append(", \"p90Ms\": ").append(json(m.p90Ms()))
+              .append(", \"p99Ms\": ").append(json(m.p99Ms()))
+              .append(", \"meanMs\": ").append(json(m.meanMs()))
+              .append(", \"minMs\": ").append(json(m.minMs()))
+              .append(", \"maxMs\": ").append(json(m.maxMs()))
+              .append(", \"speedup\": ").append(json(m.speedup()))
+              .append(", \"efficiency\": ").append(json(m.efficiency()))
+              .append(", \"allocatedBytesPerRun\": ").append(m.allocatedBytesPerRun() < 0 ? "null" : String.valueOf(m.allocatedBytesPerRun()))
+              .append(", \"samplesMs\": [");
+            for (int i = 0; i < m.samplesMs.length; i++) {
+                sb.append(i == 0 ? "" : ", ").append(json(m.samplesMs[i]));
+            }
+            sb.append("]}");
+        }
+
+        // JSON has no NaN/Infinity
+        private static String json(double value) {
+            return (Double.isNaN(value) || Double.isInfinite(value)) ? "null" : String.format(Locale.ROOT, "%.4f", value);
+        }
+    }
+
+    public ScalabilityHarness(BufferedImage image, SegmentationKernel kernel) {
+        this.image = image;
+        this.kernel = kernel;
+    }
+
+    public ScalabilityHarness warmup(int warmup) {
+        if (warmup < 0) {
+            throw new IllegalArgumentException("Warm-up iterations must not be negative");
+        }
+        this.warmup = warmup;
+        return this;
+    }
+
+    public ScalabilityHarness iterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Measured iterations must be at least 1");
+        }
+        this.iterations = iterations;
+        return this;
+    }
+
+    public ScalabilityHarness threadCounts(int... threadCounts) {
+        TreeSet<Integer> sorted = new TreeSet<>();
+        for (int n : threadCounts) {
+            if (n < 1) {
+                throw new IllegalArgumentException("Thread counts must be at least 1");
+            }
+            sorted.add(n);
+        }
+        if (sorted.isEmpty()) {
+            throw new IllegalArgumentException("At least one thread count is required");
+        }
+        this.threadCounts = sorted.stream().mapToInt(Integer::intValue).toArray();
+        return this;
+    }
+
+    public ScalabilityHarness variant(Variant variant) {
+        if (variant.simd && !VectorSegmenter.isAvailable()) {
+            throw new IllegalArgumentException("SIMD variant needs --add-modules jdk.incubator.vector");
+        }
+        variants.add(variant);
+        return this;
+    }
+
+    // 1, 2, 4, 8 up to the number of cores, plus the core count itself
+    public static int[] defaultThreadCounts() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> counts = new TreeSet<>();
+        for (int n = 1; n <= Math.min(cores, 8); n *= 2) {
+            counts.add(n);
+        }
+        counts.add(cores);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public Report run() {
+        return run(message -> { });
+    }
+
+    // Runs every measurement; progress receives one line per step (e.g. SwingWorker.publish).
+    public Report run(Consumer<String> progress) {
+        List<Variant> toRun = variants.isEmpty() ? List.of(Variant.adaptive()) : variants;
+        // One output for every measurement, in the narrowest type the kernel needs
+        BufferedImage output = RasterPool.shared().acquire(image, kernel);
+
+        progress.accept("Running sequential baseline...");
+        Measurement baseline = measure("sequential", 1, MemoryAccounting::start,
+                () -> SequentialSegmenter.segment(image, output, kernel, 0, null));
+
+        List<Measurement> runs = new ArrayList<>();
+        for (int threads : threadCounts) {
+            // A dedicated pool per thread count so the parallelism is exactly what is reported
+            try (Parralel_segmenter engine = new Parralel_segmenter(threads).start()) {
+                for (Variant variant : toRun) {
+                    progress.accept(String.format("Testing %s with %d threads...", variant.name, threads));
+                    SegmentationKernel k = variant.simd ? VectorSegmenter.vectorize(kernel) : kernel;
+                    Measurement m = measure(variant.name, threads, () -> MemoryAccounting.start(engine),
+                            () -> engine.segment(image, output, k, null, 0, variant.decomposition));
+                    m.speedup = baseline.medianMs() / m.medianMs();
+                    runs.add(m);
+                }
+            }
+        }
+
+        RasterPool.shared().release(output);
+
+        List<SerialFractionFit> fits = new ArrayList<>();
+        for (Variant variant : toRun) {
+            fits.add(fit(variant.name, baseline, runs));
+        }
+        return new Report(image, kernel.name(), warmup, iterations, baseline, runs, fits);
+    }
+
+    private Measurement measure(String variant, int threads, Supplier<MemoryAccounting.Meter> meters,
+                                Runnable segmentation) {
+        for (int i = 0; i < warmup; i++) {
+            segmentation.run();
+        }
+        double[] samples = new double[iterations];
+        // Metered across all measured iterations; reading the counters stays outside the timings
+        MemoryAccounting.Meter meter = meters.get();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            segmentation.run();
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        long allocated = meter.allocatedBytes();
+        return new Measurement(variant, threads, samples, (allocated < 0) ? -1 : allocated / iterations);
+    }
+
+    private static SerialFractionFit fit(String variant, Measurement baseline, List<Measurement> runs) {
+        double reference = baseline.medianMs();
+        for (Measurement m : runs) {
+            if (m.variant.equals(variant) && m.threads == 1) {
+                reference = m.medianMs();
+            }
+        }
+        double amdahlXY = 0, amdahlXX = 0, gustafsonXY = 0, gustafsonXX = 0;
+        int points = 0;
+        for (Measurement m : runs) {
+            if (!m.variant.equals(variant) || m.threads == 1) {
+                continue;
+            }
+            double n = m.threads;
+            double s = reference / m.medianMs();
+            double x = 1 - 1 / n;
+            amdahlXY += x * (1 / s - 1 / n);
+            amdahlXX += x * x;
+            gustafsonXY += (n - 1) * (n - s);
+            gustafsonXX += (n - 1) * (n - 1);
+            points++;
+        }
+        if (points == 0) {
+            return new SerialFractionFit(variant, Double.NaN, Double.NaN, 0);
+        }
+        return new SerialFractionFit(variant, amdahlXY / amdahlXX, gustafsonXY / gustafsonXX, points);
+    }
+
+    public static void main(String[] args) {
+        String input = null;
+        String type = "grayscale";
+        int threshold = 128;
+        String csv = null;
+        String json = null;
+        ScalabilityHarness harness;
+        BufferedImage image;
+        try {
+            List<String> variantNames = new ArrayList<>();
+            int[] threads = defaultThreadCounts();
+            int warmup = DEFAULT_WARMUP;
+            int iterations = DEFAULT_ITERATIONS;
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (input != null) {
+                        throw new IllegalArgumentException("Expected a single input image");
+                    }
+                    input = arg;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--type" -> type = value;
+                    case "--threshold" -> threshold = Integer.parseInt(value);
+                    case "--threads" -> threads = parseThreadCounts(value);
+                    case "--warmup" -> warmup = Integer.parseInt(value);
+                    case "--iterations" -> iterations = Integer.parseInt(value);
+                    case "--variants" -> variantNames.addAll(Arrays.asList(value.split(",")));
+                    case "--csv" -> csv = value;
+                    case "--json" -> json = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("Expected <image>");
+            }
+            image = ImageIO.read(new File(input));
+            if (image == null) {
+                throw new IOException("unsupported image format: " + input);
+            }
+            harness = new ScalabilityHarness(image, SegmentationKernels.forType(type, threshold))
+                    .warmup(warmup).iterations(iterations).threadCounts(threads);
+            for (String name : variantNames) {
+                harness.variant(Variant.forName(name.trim()));
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: ScalabilityHarness <image> [--type grayscale] [--threshold 128] [--threads 1,2,4,max]"
+                    + " [--warmup 3] [--iterations 10] [--variants rows,tiles,adaptive,simd,WxH] [--csv file] [--json file]");
+            System.exit(2);
+            return;
+        }
+
+        Report report = harness.run(System.out::println);
+        System.out.println();
+        System.out.print(report.toText());
+        try {
+            if (csv != null) {
+                write(csv, report.toCsv());
+            }
+            if (json != null) {
+                write(json, report.toJson());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write results: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Comma-separated thread counts; "max" is the number of available processors
+    private static int[] parseThreadCounts(String value) {
+        String[] parts = value.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            counts[i] = part.equals("max") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(part);
+        }
+        return counts;
+    }
+
+    private static void write(String path, String content) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new File(path), StandardCharsets.UTF_8)) {
+            writer.print(content);
+        }
+    }
+}
\ No newline at end of file
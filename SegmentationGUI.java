@@ -7,10 +7,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.ColorModel;
-import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
@@ -18,21 +17,39 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class SegmentationGUI extends JFrame {
+    private static final String ENGINE_FORK_JOIN = "Fork-Join";
+    private static final String ENGINE_SIMD = "Fork-Join + SIMD";
 
     private JLabel imagePreviewLabel;
     private JTextField thresholdField;
     private JComboBox<String> typeComboBox;
+    private JComboBox<String> engineComboBox;
+    private JComboBox<Decomposition> decompositionComboBox;
     private JTextField numThreadsField;
+    private JCheckBox maskOutputCheckBox;
+    private JComboBox<String> maskCleanupComboBox;
+    private JCheckBox progressiveCheckBox;
+    private JCheckBox cacheCheckBox;
+    private JCheckBox interactiveCheckBox;
+    private JSlider thresholdSlider;
     private JTextField delayMsField;
     private JTextArea metricsTextArea;
     private JScrollPane metricsScrollPane;
     private JButton uploadButton;
     private JButton startSegmentationButton;
     private JButton runScalabilityTestButton;
+    private JButton streamFileButton;
+    private JButton exportScalabilityButton;
 
     private BufferedImage originalImage;
     private BufferedImage seqOutputImage;
     private BufferedImage parOutputImage;
+    private ScalabilityHarness.Report lastScalabilityReport;
+
+    // Interactive threshold mode, touched only on the EDT apart from the worker applying steps
+    private ThresholdIndex thresholdIndex;
+    private final AtomicInteger pendingThreshold = new AtomicInteger(-1);
+    private boolean thresholdWorkerRunning;
 
     private LiveImageDisplay seqLivePanel;
     private LiveImageDisplay parLivePanel;
@@ -61,12 +78,32 @@ public class SegmentationGUI extends JFrame {
         imagePreviewLabel.setPreferredSize(new Dimension(250, 180)); // Larger preview placeholder
 
         thresholdField = new JTextField("128", 5);
-        typeComboBox = new JComboBox<>(new String[]{"grayscale", "red", "green", "custom"});
+        typeComboBox = new JComboBox<>(SegmentationKernels.types().toArray(new String[0]));
+        typeComboBox.addItem(KMeansSegmentation.type(4));
+        typeComboBox.addItem(KMeansSegmentation.type(8));
+        engineComboBox = new JComboBox<>(new String[]{ENGINE_FORK_JOIN, ENGINE_SIMD});
+        if (!VectorSegmenter.isAvailable()) {
+            // Without --add-modules jdk.incubator.vector the SIMD engine would silently run scalar code
+            engineComboBox.removeItem(ENGINE_SIMD);
+        }
+        decompositionComboBox = new JComboBox<>(new Decomposition[]{Decomposition.adaptive(), Decomposition.rows(), Decomposition.autoTiles()});
+        maskOutputCheckBox = new JCheckBox("Bit-packed mask output (parallel)");
+        // Applied inside the parallel mask run (see Morphology)
+        maskCleanupComboBox = new JComboBox<>(new String[]{Morphology.NONE, "open:1", "close:1", "open:2", "close:2", "erode:1", "dilate:1"});
+        progressiveCheckBox = new JCheckBox("Progressive preview first (parallel panel)");
+        // Repeated runs on the same image and settings are served from ResultCache.shared()
+        cacheCheckBox = new JCheckBox("Reuse cached results");
+        interactiveCheckBox = new JCheckBox("Interactive threshold (parallel panel)");
+        thresholdSlider = new JSlider(0, 255, 128);
+        thresholdSlider.setEnabled(false);
         numThreadsField = new JTextField(String.valueOf(Runtime.getRuntime().availableProcessors()), 5);
         delayMsField = new JTextField("0", 5);
 
         startSegmentationButton = new JButton("Start Segmentation");
         runScalabilityTestButton = new JButton("Run Scalability Test");
+        streamFileButton = new JButton("Segment Large File...");
+        exportScalabilityButton = new JButton("Export Results...");
+        exportScalabilityButton.setEnabled(false);
 
         // --- Metrics Display ---
         metricsTextArea = new JTextArea(15, 60); // Increased rows and columns for more text
@@ -129,19 +166,41 @@ public class SegmentationGUI extends JFrame {
         gbc.gridx = 0; gbc.gridy = 3; controlPanel.add(new JLabel("Segmentation Type:"), gbc);
         gbc.gridx = 1; gbc.gridy = 3; controlPanel.add(typeComboBox, gbc);
 
-        gbc.gridx = 0; gbc.gridy = 4; controlPanel.add(new JLabel("Number of Threads:"), gbc);
-        gbc.gridx = 1; gbc.gridy = 4; controlPanel.add(numThreadsField, gbc);
+        gbc.gridx = 0; gbc.gridy = 4; controlPanel.add(new JLabel("Parallel Engine:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 4; controlPanel.add(engineComboBox, gbc);
+
+        gbc.gridx = 0; gbc.gridy = 5; controlPanel.add(new JLabel("Decomposition:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 5; controlPanel.add(decompositionComboBox, gbc);
+
+        gbc.gridx = 0; gbc.gridy = 6; controlPanel.add(new JLabel("Number of Threads:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 6; controlPanel.add(numThreadsField, gbc);
+
+        gbc.gridx = 0; gbc.gridy = 7; controlPanel.add(new JLabel("Delay (ms/update):"), gbc);
+        gbc.gridx = 1; gbc.gridy = 7; controlPanel.add(delayMsField, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 8; controlPanel.add(maskOutputCheckBox, gbc);
+
+        gbc.gridx = 0; gbc.gridy = 9; controlPanel.add(new JLabel("Mask Cleanup:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 9; controlPanel.add(maskCleanupComboBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 10; controlPanel.add(progressiveCheckBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 11; controlPanel.add(cacheCheckBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 12; controlPanel.add(interactiveCheckBox, gbc);
 
-        gbc.gridx = 0; gbc.gridy = 5; controlPanel.add(new JLabel("Delay (ms/update):"), gbc);
-        gbc.gridx = 1; gbc.gridy = 5; controlPanel.add(delayMsField, gbc);
+        gbc.gridx = 0; gbc.gridy = 13; controlPanel.add(new JLabel("Interactive Threshold:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 13; controlPanel.add(thresholdSlider, gbc);
 
-        // Row 6: Buttons for segmentation and scalability test
+        // Row 14: Buttons for segmentation and scalability test
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 0)); // Horizontal flow for buttons
         buttonPanel.add(startSegmentationButton);
         buttonPanel.add(runScalabilityTestButton);
+        buttonPanel.add(streamFileButton);
+        buttonPanel.add(exportScalabilityButton);
 
         gbc.gridx = 0;
-        gbc.gridy = 6;
+        gbc.gridy = 14;
         gbc.gridwidth = 2; // Span across two columns
         gbc.fill = GridBagConstraints.NONE; // Don't stretch buttons
         gbc.anchor = GridBagConstraints.CENTER; // Center the panel
@@ -164,6 +223,158 @@ public class SegmentationGUI extends JFrame {
         uploadButton.addActionListener(e -> uploadPhoto());
         startSegmentationButton.addActionListener(e -> startSegmentation());
         runScalabilityTestButton.addActionListener(e -> runScalabilityTest());
+        streamFileButton.addActionListener(e -> streamLargeFile());
+        exportScalabilityButton.addActionListener(e -> exportScalabilityReport());
+        interactiveCheckBox.addActionListener(e -> {
+            if (interactiveCheckBox.isSelected()) {
+                buildThresholdIndex();
+            } else {
+                stopInteractive();
+            }
+        });
+        typeComboBox.addActionListener(e -> {
+            if (interactiveCheckBox.isSelected()) {
+                buildThresholdIndex();
+            }
+        });
+        thresholdSlider.addChangeListener(e -> thresholdSliderMoved());
+    }
+
+    // Keys the image once for the selected type so that slider moves only rewrite the pixels
+    // whose key lies between the old and the new threshold (see ThresholdIndex).
+    private void buildThresholdIndex() {
+        stopInteractive();
+        if (originalImage == null) {
+            JOptionPane.showMessageDialog(this, "Please upload an image first.", "Error", JOptionPane.ERROR_MESSAGE);
+            interactiveCheckBox.setSelected(false);
+            return;
+        }
+        String type = (String) typeComboBox.getSelectedItem();
+        if (KMeansSegmentation.parseK(type) > 0) {
+            metricsTextArea.setText("Interactive mode needs a threshold-driven type; '" + type + "' ignores the threshold.\n");
+            interactiveCheckBox.setSelected(false);
+            return;
+        }
+        boolean auto;
+        int threshold;
+        try {
+            auto = AutoThreshold.parseClasses(thresholdField.getText()) == 2;
+            threshold = auto ? 128 : Integer.parseInt(thresholdField.getText().trim());
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, "Invalid threshold for interactive mode: " + thresholdField.getText(), "Error", JOptionPane.ERROR_MESSAGE);
+            interactiveCheckBox.setSelected(false);
+            return;
+        }
+        SegmentationKernel kernel = SegmentationKernels.forType(type, threshold);
+        if (!ThresholdIndex.supports(kernel)) {
+            metricsTextArea.setText("Interactive mode needs a threshold-driven type; '" + type + "' ignores the threshold.\n");
+            interactiveCheckBox.setSelected(false);
+            return;
+        }
+
+        setControlsEnabled(false);
+        metricsTextArea.setText("Indexing image for interactive " + type + " thresholding...\n");
+        BufferedImage input = originalImage;
+        SwingWorker<ThresholdIndex, Void> worker = new SwingWorker<ThresholdIndex, Void>() {
+            private long nanos;
+
+            @Override
+            protected ThresholdIndex doInBackground() {
+                long start = System.nanoTime();
+                ThresholdIndex index = ThresholdIndex.build(input, kernel);
+                if (auto) {
+                    // The index's buckets are the key histogram, so Otsu needs no extra pass
+                    index.setThreshold(AutoThreshold.thresholdFor(kernel, AutoThreshold.otsu(index.histogram())), null);
+                }
+                nanos = System.nanoTime() - start;
+                return index;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    ThresholdIndex index = get();
+                    if (!interactiveCheckBox.isSelected() || input != originalImage) {
+                        return; // Switched off or a new image was loaded meanwhile
+                    }
+                    // Set before the index is live so this does not count as a slider move
+                    thresholdSlider.setValue(Math.max(0, Math.min(255, index.threshold())));
+                    thresholdField.setText(String.valueOf(thresholdSlider.getValue()));
+                    index.beginProgress();
+                    thresholdIndex = index;
+                    parLivePanel.setImage(index.output());
+                    metricsTextArea.setText(String.format(
+                            "Interactive %s index built in %.2f ms (%s). Moving the slider only rewrites pixels whose key crosses the threshold.%n",
+                            type, nanos / 1e6, MemoryAccounting.formatBytes(index.indexBytes())));
+                } catch (Exception ex) {
+                    metricsTextArea.append("Error: " + ex.getMessage() + "\n");
+                    interactiveCheckBox.setSelected(false);
+                } finally {
+                    setControlsEnabled(true);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void stopInteractive() {
+        if (thresholdIndex != null) {
+            thresholdIndex.endProgress();
+        }
+        thresholdIndex = null;
+        pendingThreshold.set(-1);
+        thresholdSlider.setEnabled(false);
+    }
+
+    private void thresholdSliderMoved() {
+        ThresholdIndex index = thresholdIndex;
+        if (index == null) {
+            return;
+        }
+        thresholdField.setText(String.valueOf(thresholdSlider.getValue()));
+        pendingThreshold.set(thresholdSlider.getValue());
+        applyPendingThreshold(index);
+    }
+
+    // Applies slider steps on one background worker; steps arriving while it runs collapse
+    // into the latest value, which it picks up before finishing.
+    private void applyPendingThreshold(ThresholdIndex index) {
+        if (thresholdWorkerRunning) {
+            return;
+        }
+        thresholdWorkerRunning = true;
+        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                String summary = null;
+                int threshold;
+                while ((threshold = pendingThreshold.getAndSet(-1)) >= 0) {
+                    long start = System.nanoTime();
+                    int changed = index.setThreshold(threshold, parLivePanel);
+                    summary = String.format("Threshold %d: %d pixels changed in %.3f ms%n",
+                            threshold, changed, (System.nanoTime() - start) / 1e6);
+                }
+                return summary;
+            }
+
+            @Override
+            protected void done() {
+                thresholdWorkerRunning = false;
+                try {
+                    String summary = get();
+                    if (summary != null && index == thresholdIndex) {
+                        metricsTextArea.setText(summary);
+                    }
+                } catch (Exception ex) {
+                    metricsTextArea.append("Error: " + ex.getMessage() + "\n");
+                }
+                // A step queued after the loop above drained the last one
+                if (pendingThreshold.get() >= 0 && thresholdIndex != null) {
+                    applyPendingThreshold(thresholdIndex);
+                }
+            }
+        };
+        worker.execute();
     }
 
     private void uploadPhoto() {
@@ -189,13 +400,17 @@ public class SegmentationGUI extends JFrame {
                 imagePreviewLabel.setIcon(new ImageIcon(scaledImage));
                 imagePreviewLabel.setText(""); // Clear text
 
-                // Initialize output images
-                seqOutputImage = deepCopy(originalImage);
-                parOutputImage = deepCopy(originalImage);
-
-                // Update live display panels with initial image
-                seqLivePanel.setImage(seqOutputImage);
-                parLivePanel.setImage(parOutputImage);
+                interactiveCheckBox.setSelected(false);
+                stopInteractive();
+
+                // The panels show the input until the first run; outputs are only allocated
+                // then, in the type the chosen kernel needs
+                seqLivePanel.setImage(originalImage);
+                parLivePanel.setImage(originalImage);
+                RasterPool.shared().release(seqOutputImage);
+                RasterPool.shared().release(parOutputImage);
+                seqOutputImage = null;
+                parOutputImage = null;
                 seqLivePanel.repaint();
                 parLivePanel.repaint();
 
@@ -215,6 +430,10 @@ public class SegmentationGUI extends JFrame {
             return;
         }
 
+        // A full run replaces the interactive output in the parallel panel
+        interactiveCheckBox.setSelected(false);
+        stopInteractive();
+
         // Disable buttons during computation
         setControlsEnabled(false);
         metricsTextArea.setText("Starting segmentation...\n");
@@ -223,86 +442,196 @@ public class SegmentationGUI extends JFrame {
         SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
-                int threshold = Integer.parseInt(thresholdField.getText());
                 String type = (String) typeComboBox.getSelectedItem();
+                boolean simd = ENGINE_SIMD.equals(engineComboBox.getSelectedItem());
+                Decomposition decomposition = (Decomposition) decompositionComboBox.getSelectedItem();
+                boolean maskOutput = maskOutputCheckBox.isSelected();
+                Morphology cleanup = Morphology.parse((String) maskCleanupComboBox.getSelectedItem());
                 int numThreads = Integer.parseInt(numThreadsField.getText());
                 int delayMs = Integer.parseInt(delayMsField.getText());
-
-                // Reset output images for a fresh run
-                seqOutputImage = deepCopy(originalImage);
-                parOutputImage = deepCopy(originalImage);
+                SegmentationKernel kernel = resolveKernel(type, numThreads, decomposition);
+                ResultCache cache = cacheCheckBox.isSelected() ? ResultCache.shared() : null;
+
+                // Fresh outputs for this run, recycled from earlier runs where the shape matches
+                // and as narrow as the kernel allows (see RasterPool); every pixel is overwritten
+                BufferedImage previousSeq = seqOutputImage;
+                BufferedImage previousPar = parOutputImage;
+                seqOutputImage = RasterPool.shared().acquire(originalImage, kernel);
+                parOutputImage = RasterPool.shared().acquire(originalImage, kernel);
                 seqLivePanel.setImage(seqOutputImage);
                 parLivePanel.setImage(parOutputImage);
+                RasterPool.shared().release(previousSeq);
+                RasterPool.shared().release(previousPar);
                 seqLivePanel.repaint();
                 parLivePanel.repaint();
 
-                // Measure Memory Overhead before sequential
-                Runtime runtime = Runtime.getRuntime();
-                System.gc(); // Request GC
-                long memUsedBeforeSeq = runtime.totalMemory() - runtime.freeMemory();
+                if (progressiveCheckBox.isSelected()) {
+                    // Coarse-to-fine preview on the parallel panel while the timed runs crawl;
+                    // the parallel run later overwrites it with the exact result
+                    ProgressiveSegmenter.Result preview = ProgressiveSegmenter.segment(Parralel_segmenter.shared(numThreads),
+                            originalImage, parOutputImage, kernel, ProgressiveSegmenter.DEFAULT_MARGIN, parLivePanel);
+                    SwingUtilities.invokeLater(() -> metricsTextArea.append(preview.toString()));
+                }
+
+                // The two timed runs keep separate cache entries, and the cache is consulted only
+                // when both have one: a comparison of one computed run against a copy means nothing
+                Parralel_segmenter engine = Parralel_segmenter.shared(numThreads);
+                SegmentationKernel parKernel = simd ? VectorSegmenter.vectorize(kernel) : kernel;
+                ResultCache.Key seqKey = null;
+                ResultCache.Key parKey = null;
+                boolean bothCached = false;
+                if (cache != null) {
+                    seqKey = cache.key(engine, originalImage, "sequential " + ResultCache.imageVariant(kernel));
+                    parKey = cache.key(engine, originalImage, maskOutput ? ResultCache.maskVariant(parKernel, cleanup)
+                            : ResultCache.imageVariant(parKernel));
+                    bothCached = cache.contains(seqKey) && cache.contains(parKey);
+                }
 
                 metricsTextArea.append("Running sequential segmentation...\n");
+                // Allocation is counted per thread, so no GC is forced around the timed regions
+                MemoryAccounting.Meter seqMeter = MemoryAccounting.start();
                 long startSeq = System.nanoTime();
-                // Pass seqLivePanel for live updates
-                SequentialSegmenter.segment(originalImage, seqOutputImage, threshold, type, delayMs, seqLivePanel);
+                boolean seqCached = bothCached && cache.getImage(seqKey, seqOutputImage);
+                if (seqCached) {
+                    // Copied behind the panel's back: report it like a run would, so the panel
+                    // refreshes its rendition
+                    SegmentationProgress seqProgress = seqLivePanel.startProgress();
+                    seqProgress.rowsDone(0, 0, seqOutputImage.getWidth(), seqOutputImage.getHeight());
+                    seqProgress.finish();
+                } else {
+                    // Pass seqLivePanel for live updates
+                    SequentialSegmenter.segment(originalImage, seqOutputImage, kernel, delayMs, seqLivePanel);
+                    if (seqKey != null) {
+                        cache.putImage(seqKey, seqOutputImage);
+                    }
+                }
                 long endSeq = System.nanoTime();
                 double seqTimeMs = (endSeq - startSeq) / 1e6;
+                MemoryAccounting.RunMemory seqMemory = new MemoryAccounting.RunMemory("Sequential",
+                        seqMeter.allocatedBytes(), MemoryAccounting.bytesOf(seqOutputImage));
                 seqLivePanel.repaint(); // Final repaint
 
-                System.gc(); // Request GC
-                long memUsedAfterSeq = runtime.totalMemory() - runtime.freeMemory();
-
-
                 metricsTextArea.append("Running parallel segmentation...\n");
+                MemoryAccounting.Meter parMeter = MemoryAccounting.start(engine);
                 long startPar = System.nanoTime();
+                BinaryMask mask = null;
+                SegmentationTelemetry telemetry = null;
+                boolean parHit = false;
                 // Pass parLivePanel for live updates
-                Parralel_segmenter.segment(originalImage, parOutputImage, threshold, type, numThreads, parLivePanel, delayMs);
+                if (maskOutput) {
+                    if (bothCached) {
+                        mask = cache.getMask(parKey);
+                        parHit = mask != null;
+                    }
+                    if (mask == null) {
+                        mask = engine.segmentMask(originalImage, parKernel, decomposition, cleanup);
+                        if (parKey != null) {
+                            cache.putMask(parKey, mask);
+                        }
+                    }
+                } else {
+                    // The engine serves a hit itself (reporting it to the panel) and returns no telemetry
+                    telemetry = engine.segment(originalImage, parOutputImage, parKernel, parLivePanel, delayMs,
+                            decomposition, bothCached ? cache : null);
+                    parHit = telemetry == null;
+                    if (!bothCached && parKey != null) {
+                        cache.putImage(parKey, parOutputImage);
+                    }
+                }
                 long endPar = System.nanoTime();
+                boolean parCached = parHit;
                 double parTimeMs = (endPar - startPar) / 1e6;
+                MemoryAccounting.RunMemory parMemory = new MemoryAccounting.RunMemory(simd ? ENGINE_SIMD : ENGINE_FORK_JOIN,
+                        parMeter.allocatedBytes(), (mask != null) ? mask.sizeInBytes() : MemoryAccounting.bytesOf(parOutputImage));
+                long maskBytes = (mask == null) ? 0 : mask.sizeInBytes();
+                long runLengthBytes = (mask == null) ? 0 : mask.toRunLengths().sizeInBytes();
+                String telemetryText = (telemetry == null) ? null : telemetry.toText();
+                ConnectedComponents components = null;
+                long labelNanos = 0;
+                if (mask != null) {
+                    // The segments themselves, labelled on the same pool after the timed run
+                    long startLabel = System.nanoTime();
+                    components = ConnectedComponents.label(engine, mask, true);
+                    labelNanos = System.nanoTime() - startLabel;
+                    // Expanded to an image only for display, outside the timed region
+                    RasterPool.shared().release(parOutputImage);
+                    parOutputImage = mask.toImage(0xFFFFFF, 0x000000);
+                    parLivePanel.setImage(parOutputImage);
+                }
                 parLivePanel.repaint(); // Final repaint
-
-                System.gc(); // Request GC
-                long memUsedAfterPar = runtime.totalMemory() - runtime.freeMemory();
+                String componentsText = (components == null) ? null
+                        : String.format("Connected Components: %s, labelled in %.2f ms%n", components, labelNanos / 1e6);
+                String cacheText = (cache == null) ? null
+                        : String.format("Result Cache: sequential %s, parallel %s; %s%n", seqCached ? "served from cache" : "computed",
+                                parCached ? "served from cache" : "computed", cache.stats());
+                // Times of cache copies say nothing about the engines
+                boolean anyCached = seqCached || parCached;
 
                 // Calculate Metrics
                 double speedup = seqTimeMs / parTimeMs;
-                // Approximate memory used *by the segmentation process* (change in heap usage)
-                // This is a rough estimate due to GC and other JVM activities
-                long seqMemFootprint = memUsedAfterSeq - memUsedBeforeSeq;
-                long parMemFootprint = memUsedAfterPar - memUsedBeforeSeq;
+                // Footprint = bytes allocated during the run + bytes the result retains
+                long seqMemFootprint = seqMemory.footprintBytes();
+                long parMemFootprint = parMemory.footprintBytes();
                 double memoryOverheadRatio = (seqMemFootprint == 0) ? 1.0 : (double) parMemFootprint / seqMemFootprint; // Avoid div by zero
 
                 // Display Results
                 SwingUtilities.invokeLater(() -> {
                     metricsTextArea.append("\n--- Segmentation Results ---\n");
-                    metricsTextArea.append(String.format("Sequential Time: %.2f ms%n", seqTimeMs));
-                    metricsTextArea.append(String.format("Parallel Time: %.2f ms (Threads: %d)%n", parTimeMs, numThreads));
-                    metricsTextArea.append(String.format("Speed-up: %.2fx%n", speedup));
-                    metricsTextArea.append(String.format("Memory Footprint (Approx): Sequential %.2f MB, Parallel %.2f MB%n",
+                    metricsTextArea.append(String.format("Sequential Time: %.2f ms%s%n", seqTimeMs,
+                            seqCached ? " (served from cache)" : ""));
+                    metricsTextArea.append(String.format("Parallel Time: %.2f ms (Threads: %d, Engine: %s, %s)%s%n",
+                            parTimeMs, numThreads, simd ? ENGINE_SIMD : ENGINE_FORK_JOIN, decomposition,
+                            parCached ? " (served from cache)" : ""));
+                    if (!anyCached) {
+                        metricsTextArea.append(String.format("Speed-up: %.2fx%n", speedup));
+                    }
+                    metricsTextArea.append(String.format("Memory Footprint: Sequential %.2f MB, Parallel %.2f MB%n",
                             seqMemFootprint / (1024.0 * 1024.0), parMemFootprint / (1024.0 * 1024.0)));
-                    metricsTextArea.append(String.format("Memory Overhead Ratio: %.2fx%n", memoryOverheadRatio));
+                    metricsTextArea.append("  " + seqMemory + "\n  " + parMemory + "\n");
+                    if (!anyCached) {
+                        metricsTextArea.append(String.format("Memory Overhead Ratio: %.2fx%n", memoryOverheadRatio));
+                    }
+                    if (maskOutput) {
+                        metricsTextArea.append(String.format("Mask Output: %.2f MB bit-packed, %.2f MB run-length encoded (ARGB would be %.2f MB)%s%n",
+                                maskBytes / (1024.0 * 1024.0), runLengthBytes / (1024.0 * 1024.0),
+                                originalImage.getWidth() * (long) originalImage.getHeight() * 4 / (1024.0 * 1024.0),
+                                (cleanup == null) ? "" : ", cleaned with " + cleanup + " in the same pass"));
+                    }
+                    if (componentsText != null) {
+                        metricsTextArea.append(componentsText);
+                    }
+                    if (telemetryText != null) {
+                        metricsTextArea.append(telemetryText);
+                    }
+                    if (cacheText != null) {
+                        metricsTextArea.append(cacheText);
+                    }
 
                     // Goals
-                    if (numThreads >= 8) { // Assuming 8-core CPU goal
-                        double idealSpeedup = (double) numThreads;
-                        double efficiency = (speedup / idealSpeedup) * 100; // Percentage of ideal speedup
-                        metricsTextArea.append(String.format("Efficiency (vs ideal speedup for %d cores): %.2f%%%n", numThreads, efficiency));
-                        if (speedup >= 3.0) {
-                            metricsTextArea.append("Goal: Speed-up >= 3x on 8-core CPU - ACHIEVED\n");
+                    if (anyCached) {
+                        metricsTextArea.append("Goals: not evaluated, results were served from the cache (untick \"Reuse cached results\" to time the engines).\n");
+                    } else {
+                        if (numThreads >= 8) { // Assuming 8-core CPU goal
+                            double idealSpeedup = (double) numThreads;
+                            double efficiency = (speedup / idealSpeedup) * 100; // Percentage of ideal speedup
+                            metricsTextArea.append(String.format("Efficiency (vs ideal speedup for %d cores): %.2f%%%n", numThreads, efficiency));
+                            if (speedup >= 3.0) {
+                                metricsTextArea.append("Goal: Speed-up >= 3x on 8-core CPU - ACHIEVED\n");
+                            } else {
+                                metricsTextArea.append("Goal: Speed-up >= 3x on 8-core CPU - NOT YET ACHIEVED (aim for 70% of ideal)\n");
+                            }
                         } else {
-                            metricsTextArea.append("Goal: Speed-up >= 3x on 8-core CPU - NOT YET ACHIEVED (aim for 70% of ideal)\n");
+                            metricsTextArea.append("Note: Speed-up goal evaluation applies best on an 8-core or higher CPU.\n");
                         }
-                    } else {
-                        metricsTextArea.append("Note: Speed-up goal evaluation applies best on an 8-core or higher CPU.\n");
-                    }
 
-                    if (memoryOverheadRatio <= 2.0) {
-                        metricsTextArea.append("Goal: Memory Overhead <= 2x sequential footprint - ACHIEVED\n");
-                    } else {
-                        metricsTextArea.append("Goal: Memory Overhead <= 2x sequential footprint - NOT YET ACHIEVED\n");
+                        if (memoryOverheadRatio <= 2.0) {
+                            metricsTextArea.append("Goal: Memory Overhead <= 2x sequential footprint - ACHIEVED\n");
+                        } else {
+                            metricsTextArea.append("Goal: Memory Overhead <= 2x sequential footprint - NOT YET ACHIEVED\n");
+                        }
+                        metricsTextArea.append("CPU Utilization Goal: Aim for ≥ 85% during compute phase (requires external monitoring for true validation).\n");
+                        metricsTextArea.append("Scalability Goal: Better with more cores (shown below in Scalability Test results).\n");
                     }
-                    metricsTextArea.append("CPU Utilization Goal: Aim for ≥ 85% during compute phase (requires external monitoring for true validation).\n");
-                    metricsTextArea.append("Scalability Goal: Better with more cores (shown below in Scalability Test results).\n");
 
 
                     // Display combined image
@@ -329,56 +658,20 @@ public class SegmentationGUI extends JFrame {
         setControlsEnabled(false);
         metricsTextArea.setText("Running scalability test...\n");
 
-        SwingWorker<List<String>, String> worker = new SwingWorker<List<String>, String>() {
+        SwingWorker<ScalabilityHarness.Report, String> worker = new SwingWorker<ScalabilityHarness.Report, String>() {
             @Override
-            protected List<String> doInBackground() throws Exception {
-                List<String> results = new ArrayList<>();
-                int threshold = Integer.parseInt(thresholdField.getText());
+            protected ScalabilityHarness.Report doInBackground() throws Exception {
                 String type = (String) typeComboBox.getSelectedItem();
-                int delayMs = 0; // Scalability test should run with no delay for accurate timing
-
-                // Run sequential once for baseline
-                BufferedImage currentSeqOutput = deepCopy(originalImage);
-                publish("Running sequential baseline...\n");
-                long startSeq = System.nanoTime();
-                SequentialSegmenter.segment(originalImage, currentSeqOutput, threshold, type, delayMs, null); // No live panel for baseline
-                long endSeq = System.nanoTime();
-                double seqTimeMs = (endSeq - startSeq) / 1e6;
-                results.add(String.format("Sequential Time (Baseline): %.2f ms%n", seqTimeMs));
-                publish("Sequential baseline done.\n");
-
-
-                publish("Starting parallel runs for scalability...\n");
-                // Test with various thread counts (e.g., 1, 2, 4, 8, max_cores)
-                int maxAvailableCores = Runtime.getRuntime().availableProcessors();
-                // Ensure thread counts are sorted and unique
-                List<Integer> threadCountsList = new ArrayList<>();
-                threadCountsList.add(1);
-                if (maxAvailableCores >= 2) threadCountsList.add(2);
-                if (maxAvailableCores >= 4) threadCountsList.add(4);
-                if (maxAvailableCores >= 8) threadCountsList.add(8);
-                if (!threadCountsList.contains(maxAvailableCores)) { // Add max cores if not already included
-                    threadCountsList.add(maxAvailableCores);
+                SegmentationKernel kernel = resolveKernel(type, Integer.parseInt(numThreadsField.getText()), Decomposition.adaptive());
+                // Same measurements as the headless ScalabilityHarness: warm-up, repeated runs, percentiles
+                ScalabilityHarness harness = new ScalabilityHarness(originalImage, kernel)
+                        .variant(ScalabilityHarness.Variant.adaptive())
+                        .variant(ScalabilityHarness.Variant.rows())
+                        .variant(ScalabilityHarness.Variant.tiles());
+                if (VectorSegmenter.isAvailable()) {
+                    harness.variant(ScalabilityHarness.Variant.simd());
                 }
-                int[] threadCountsToTest = threadCountsList.stream().mapToInt(Integer::intValue).sorted().toArray();
-
-
-                for (int numThreads : threadCountsToTest) {
-                    if (numThreads == 0) continue; // Avoid 0 threads
-                    publish(String.format("Testing with %d threads...\n", numThreads));
-
-                    BufferedImage currentParOutput = deepCopy(originalImage);
-                    long startPar = System.nanoTime();
-                    Parralel_segmenter.segment(originalImage, currentParOutput, threshold, type, numThreads, null, delayMs); // Pass null for live panel for pure timing
-                    long endPar = System.nanoTime();
-                    double parTimeMs = (endPar - startPar) / 1e6;
-
-                    double speedup = seqTimeMs / parTimeMs;
-                    results.add(String.format("  Threads: %d, Parallel Time: %.2f ms, Speed-up: %.2fx%n",
-                                              numThreads, parTimeMs, speedup));
-                    results.add(String.format("  (Ideal Speed-up for %d cores: %.2fx)%n", numThreads, (double)numThreads));
-                }
-                return results;
+                return harness.run(line -> publish(line + "\n"));
             }
 
             @Override
@@ -392,12 +685,11 @@ public class SegmentationGUI extends JFrame {
             @Override
             protected void done() {
                 try {
-                    List<String> finalResults = get();
+                    ScalabilityHarness.Report report = get();
                     metricsTextArea.append("\n--- Scalability Test Results ---\n");
-                    for (String result : finalResults) {
-                        metricsTextArea.append(result);
-                    }
-                    metricsTextArea.append("\n**Scalability Note:** You should generally see speed-up increase with more cores until a **plateau** is reached. This occurs due to factors like Amdahl's Law (inherent sequential parts of the algorithm), diminishing returns from too many threads (context switching overhead), and the fixed overhead of setting up and managing parallel tasks.\n");
+                    metricsTextArea.append(report.toText());
+                    metricsTextArea.append("\n**Scalability Note:** You should generally see speed-up increase with more cores until a **plateau** is reached. This occurs due to factors like Amdahl's Law (inherent sequential parts of the algorithm), diminishing returns from too many threads (context switching overhead), and the fixed overhead of setting up and managing parallel tasks. The fitted serial fraction estimates that sequential part.\n");
+                    lastScalabilityReport = report;
                 } catch (Exception ex) {
                     metricsTextArea.append("Error during scalability test: " + ex.getMessage() + "\n");
                 } finally {
@@ -408,23 +700,127 @@ public class SegmentationGUI extends JFrame {
         worker.execute();
     }
 
+    // Saves the last scalability report as CSV or JSON, chosen by the file extension.
+    private void exportScalabilityReport() {
+        if (lastScalabilityReport == null) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Scalability Results");
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV or JSON", "csv", "json"));
+        chooser.setSelectedFile(new File("scalability.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        String content = file.getName().toLowerCase().endsWith(".json")
+                ? lastScalabilityReport.toJson() : lastScalabilityReport.toCsv();
+        try {
+            Files.writeString(file.toPath(), content);
+            metricsTextArea.append("Scalability results exported to " + file.getAbsolutePath() + "\n");
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error exporting results: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+
+    // Segments a file strip by strip without loading it, for images too large for the heap.
+    private void streamLargeFile() {
+        JFileChooser inputChooser = new JFileChooser();
+        inputChooser.setDialogTitle("Select a Large Image File");
+        inputChooser.setFileFilter(new FileNameExtensionFilter("Image Files", "tif", "tiff", "bmp", "png", "jpg", "jpeg"));
+        if (inputChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File inputFile = inputChooser.getSelectedFile();
+
+        JFileChooser outputChooser = new JFileChooser(inputFile.getParentFile());
+        outputChooser.setDialogTitle("Save Segmented Image As (.tif recommended)");
+        if (outputChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File outputFile = outputChooser.getSelectedFile();
+
+        setControlsEnabled(false);
+        metricsTextArea.setText("Streaming segmentation of " + inputFile.getName() + "...\n");
+
+        SwingWorker<Double, Void> worker = new SwingWorker<Double, Void>() {
+            @Override
+            protected Double doInBackground() throws Exception {
+                if (AutoThreshold.isAuto(thresholdField.getText())) {
+                    throw new IllegalArgumentException("An automatic threshold needs the whole image; enter a number to stream a file");
+                }
+                String type = (String) typeComboBox.getSelectedItem();
+                if (KMeansSegmentation.parseK(type) > 0) {
+                    throw new IllegalArgumentException("K-means fits its colours to the whole image; choose a threshold type to stream a file");
+                }
+                int threshold = Integer.parseInt(thresholdField.getText().trim());
+                int numThreads = Integer.parseInt(numThreadsField.getText());
+                SegmentationKernel kernel = SegmentationKernels.forType(type, threshold);
+                if (ENGINE_SIMD.equals(engineComboBox.getSelectedItem())) {
+                    kernel = VectorSegmenter.vectorize(kernel);
+                }
+
+                long start = System.nanoTime();
+                StreamingSegmenter.segment(inputFile, outputFile, kernel, Parralel_segmenter.shared(numThreads),
+                        StreamingSegmenter.DEFAULT_STRIP_ROWS);
+                return (System.nanoTime() - start) / 1e6;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    double timeMs = get();
+                    metricsTextArea.append(String.format("Wrote %s in %.2f ms (%d-row strips).%n",
+                            outputFile.getAbsolutePath(), timeMs, StreamingSegmenter.DEFAULT_STRIP_ROWS));
+                } catch (Exception ex) {
+                    metricsTextArea.append("Error during streaming segmentation: " + ex.getMessage() + "\n");
+                } finally {
+                    setControlsEnabled(true);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    // The kernel for the threshold field: a fixed number, or "auto" / "auto:N" resolved for the
+    // loaded image from a histogram built on the parallel engine's pool (see AutoThreshold).
+    // K-means types ignore the threshold and fit their centroids on the same pool.
+    private SegmentationKernel resolveKernel(String type, int numThreads, Decomposition decomposition) {
+        int k = KMeansSegmentation.parseK(type);
+        if (k > 0) {
+            KMeansSegmentation.Model model = new KMeansSegmentation(k).fit(Parralel_segmenter.shared(numThreads), originalImage, decomposition);
+            SwingUtilities.invokeLater(() -> metricsTextArea.append(model + "\n"));
+            return model.kernel();
+        }
+        String text = thresholdField.getText();
+        int classes = AutoThreshold.parseClasses(text);
+        if (classes == 0) {
+            return SegmentationKernels.forType(type, Integer.parseInt(text.trim()));
+        }
+        AutoThreshold.Choice choice = AutoThreshold.choose(Parralel_segmenter.shared(numThreads), originalImage, type, classes, decomposition);
+        SwingUtilities.invokeLater(() -> metricsTextArea.append(choice + "\n"));
+        return choice.kernel();
+    }
 
     private void setControlsEnabled(boolean enabled) {
         uploadButton.setEnabled(enabled);
         thresholdField.setEnabled(enabled);
         typeComboBox.setEnabled(enabled);
+        engineComboBox.setEnabled(enabled);
+        decompositionComboBox.setEnabled(enabled);
         numThreadsField.setEnabled(enabled);
+        maskOutputCheckBox.setEnabled(enabled);
+        maskCleanupComboBox.setEnabled(enabled);
+        progressiveCheckBox.setEnabled(enabled);
+        cacheCheckBox.setEnabled(enabled);
         delayMsField.setEnabled(enabled);
         startSegmentationButton.setEnabled(enabled);
         runScalabilityTestButton.setEnabled(enabled);
-    }
-
-    private BufferedImage deepCopy(BufferedImage bi) {
-        if (bi == null) return null; // Handle null input
-        ColorModel cm = bi.getColorModel();
-        boolean isAlphaPremultiplied = cm.isAlphaPremultiplied();
-        WritableRaster raster = bi.copyData(null);
-        return new BufferedImage(cm, raster, isAlphaPremultiplied, null);
+        streamFileButton.setEnabled(enabled);
+        exportScalabilityButton.setEnabled(enabled && lastScalabilityReport != null);
+        interactiveCheckBox.setEnabled(enabled);
+        thresholdSlider.setEnabled(enabled && thresholdIndex != null);
     }
 
     private void displayCombinedImage(BufferedImage seqImg, BufferedImage parImg) {
@@ -0,0 +1,37 @@
+package Project;
+
+// A segmentation rule resolved once per job and applied a whole row at a time.
+// Implementations own their inner loop so the JIT sees one monomorphic hot loop per kernel.
+public interface SegmentationKernel {
+
+    // Segments width packed-ARGB pixels from src[srcOff..] into dst[dstOff..].
+    // The alpha byte of every input pixel must be carried over to the output.
+    void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width);
+
+    // Short description including the parameters, e.g. "grayscale(128)".
+    String name();
+
+    // Sets bit (bitOff + i) of bits for every foreground pixel i of the row. By default that is
+    // whatever segmentRow leaves non-black; kernels override this to skip the ARGB output.
+    // scratch holds at least width ints.
+    default void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+        segmentRow(src, srcOff, scratch, 0, width);
+        for (int i = 0; i < width; i++) {
+            int pos = bitOff + i;
+            bits[pos >>> 6] |= (long) (-(scratch[i] & 0xFFFFFF) >>> 31) << pos;
+        }
+    }
+
+    // Identifies kernels of equal per-pixel cost, for sharing cost measurements
+    // (LeafCalibration). Parameters that only change the result, such as a threshold, are left
+    // out; kernels whose cost depends on a parameter add it.
+    default String costClass() {
+        return getClass().getName();
+    }
+
+    // Every RGB colour segmentRow can produce, background first, or null when outputs keep
+    // colours of the input. Lets callers store the output in a narrower image (RasterPool).
+    default int[] outputPalette() {
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,445 @@
+package Project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+// Registry of the segmentation types offered by the engines and the GUI.
+// Each type maps a threshold to a SegmentationKernel; custom rules can be added with register().
+// The built-in kernels precompute lookup tables for their threshold when constructed, so
+// the inner loops are table loads and bit operations with no data-dependent branches.
+public final class SegmentationKernels {
+    private static final int ALPHA = 0xFF000000;
+    private static final Map<String, IntFunction<SegmentationKernel>> registry = new ConcurrentHashMap<>();
+    private static final List<String> order = new ArrayList<>();
+
+    static {
+        register("grayscale", Grayscale::new);
+        register("red", t -> new DominantChannel("red", 16, t, 0xFF0000));
+        register("green", t -> new DominantChannel("green", 8, t, 0x00FF00));
+        // The historical "custom" rule: r > 100 && g < 150 && b > 50
+        register("custom", t -> new RgbRange("custom", 101, 255, 0, 149, 51, 255));
+    }
+
+    private SegmentationKernels() {
+    }
+
+    public static void register(String type, IntFunction<SegmentationKernel> factory) {
+        synchronized (order) {
+            if (registry.put(type, factory) == null) {
+                order.add(type);
+            }
+        }
+    }
+
+    public static List<String> types() {
+        synchronized (order) {
+            return new ArrayList<>(order);
+        }
+    }
+
+    public static SegmentationKernel forType(String type, int threshold) {
+        IntFunction<SegmentationKernel> factory = registry.get(type);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown segmentation type: " + type);
+        }
+        return factory.apply(threshold);
+    }
+
+    // Binary white/black split on the channel average: (r + g + b) / 3 >= threshold.
+    public static final class Grayscale implements SegmentationKernel {
+        private final int threshold;
+        private final int[] sumToRgb = new int[766]; // r + g + b -> 0x000000 or 0xFFFFFF
+
+        public Grayscale(int threshold) {
+            this.threshold = threshold;
+            for (int sum = 0; sum < sumToRgb.length; sum++) {
+                sumToRgb[sum] = (sum / 3 < threshold) ? 0 : 0xFFFFFF;
+            }
+        }
+
+        public int threshold() {
+            return threshold;
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int[] lut = sumToRgb;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                dst[dstOff + i] = (p & ALPHA) | lut[((p >> 16) & 0xFF) + ((p >> 8) & 0xFF) + (p & 0xFF)];
+            }
+        }
+
+        @Override
+        public void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+            int[] lut = sumToRgb;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                int pos = bitOff + i;
+                bits[pos >>> 6] |= (long) (lut[((p >> 16) & 0xFF) + ((p >> 8) & 0xFF) + (p & 0xFF)] & 1) << pos;
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            return new int[]{0x000000, 0xFFFFFF};
+        }
+
+        @Override
+        public String name() {
+            return "grayscale(" + threshold + ")";
+        }
+    }
+
+    // Posterizes the channel average into thresholds.length + 1 evenly spaced grays: pixels
+    // whose average is below thresholds[0] are black, at or above the last one white. Used for
+    // multi-level automatic thresholds (AutoThreshold).
+    public static final class GrayLevels implements SegmentationKernel {
+        private final int[] thresholds;
+        private final int[] sumToRgb = new int[766]; // r + g + b -> gray level
+
+        public GrayLevels(int[] thresholds) {
+            if (thresholds.length == 0) {
+                throw new IllegalArgumentException("At least one threshold is required");
+            }
+            this.thresholds = thresholds.clone();
+            Arrays.sort(this.thresholds);
+            int levels = thresholds.length;
+            for (int sum = 0; sum < sumToRgb.length; sum++) {
+                int level = 0;
+                while (level < levels && sum / 3 >= this.thresholds[level]) {
+                    level++;
+                }
+                sumToRgb[sum] = (255 * level / levels) * 0x010101;
+            }
+        }
+
+        public int[] thresholds() {
+            return thresholds.clone();
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int[] lut = sumToRgb;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                dst[dstOff + i] = (p & ALPHA) | lut[((p >> 16) & 0xFF) + ((p >> 8) & 0xFF) + (p & 0xFF)];
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            int levels = thresholds.length;
+            int[] grays = new int[levels + 1];
+            for (int level = 0; level <= levels; level++) {
+                grays[level] = (255 * level / levels) * 0x010101;
+            }
+            return grays;
+        }
+
+        @Override
+        public String name() {
+            return "levels" + Arrays.toString(thresholds);
+        }
+    }
+
+    // Replaces every pixel with the nearest of a palette of colours (Euclidean distance in RGB,
+    // ties to the lower index), e.g. the centroids of a k-means fit. Most pixels are a single
+    // table load: the colour cube is cut into 8x8x8 cells and a cell whose centre is nearer to
+    // one colour than to any other by more than the cell's diameter maps to it outright. The
+    // remaining cells keep the short list of colours that can be nearest somewhere in the cell,
+    // and only those are compared.
+    public static final class NearestCentroid implements SegmentationKernel {
+        private static final double CELL_DIAMETER = 7 * Math.sqrt(3);
+        private final String label;
+        private final int[] palette;
+        // 5-5-5 bit cell -> palette index, or ~offset of the cell's list in candidates
+        private final int[] cellToIndex = new int[1 << 15];
+        private final int[] candidates;    // per listed cell: count, then palette indices ascending
+
+        public NearestCentroid(String label, int[] palette) {
+            if (palette.length == 0) {
+                throw new IllegalArgumentException("Palette must not be empty");
+            }
+            this.label = label;
+            this.palette = new int[palette.length];
+            for (int i = 0; i < palette.length; i++) {
+                this.palette[i] = palette[i] & 0xFFFFFF;
+            }
+            double[] distance = new double[palette.length];
+            int[] lists = new int[64];
+            int used = 0;
+            for (int cell = 0; cell < cellToIndex.length; cell++) {
+                double r = ((cell >> 10) << 3) + 3.5;
+                double g = (((cell >> 5) & 31) << 3) + 3.5;
+                double b = ((cell & 31) << 3) + 3.5;
+                int best = 0;
+                for (int i = 0; i < this.palette.length; i++) {
+                    int c = this.palette[i];
+                    double dr = r - ((c >> 16) & 0xFF), dg = g - ((c >> 8) & 0xFF), db = b - (c & 0xFF);
+                    distance[i] = Math.sqrt(dr * dr + dg * dg + db * db);
+                    if (distance[i] < distance[best]) {
+                        best = i;
+                    }
+                }
+                // Every pixel of the cell is within half a diameter of its centre, so a colour
+                // further than best + diameter from the centre is never nearest in the cell
+                double reach = distance[best] + CELL_DIAMETER + 1e-9;
+                int count = 0;
+                for (int i = 0; i < this.palette.length; i++) {
+                    if (distance[i] <= reach) {
+                        count++;
+                    }
+                }
+                if (count == 1) {
+                    cellToIndex[cell] = best;
+                    continue;
+                }
+                if (used + count + 1 > lists.length) {
+                    lists = Arrays.copyOf(lists, Math.max(lists.length * 2, used + count + 1));
+                }
+                cellToIndex[cell] = ~used;
+                lists[used++] = count;
+                for (int i = 0; i < this.palette.length; i++) {
+                    if (distance[i] <= reach) {
+                        lists[used++] = i;
+                    }
+                }
+            }
+            this.candidates = Arrays.copyOf(lists, used);
+        }
+
+        public int[] palette() {
+            return palette.clone();
+        }
+
+        // Palette index nearest to the pixel's colour
+        int nearest(int p) {
+            int index = cellToIndex[((p >> 9) & 0x7C00) | ((p >> 6) & 0x3E0) | ((p >> 3) & 0x1F)];
+            if (index >= 0) {
+                return index;
+            }
+            int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            int[] list = candidates;
+            int from = ~index + 1;
+            int to = from + list[~index];
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int j = from; j < to; j++) {
+                int c = palette[list[j]];
+                int dr = r - ((c >> 16) & 0xFF), dg = g - ((c >> 8) & 0xFF), db = b - (c & 0xFF);
+                int d = dr * dr + dg * dg + db * db;
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = list[j];
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int[] colors = palette;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                dst[dstOff + i] = (p & ALPHA) | colors[nearest(p)];
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            return palette.clone();
+        }
+
+        // More colours mean more cells with a list to compare
+        @Override
+        public String costClass() {
+            return getClass().getName() + '(' + palette.length + ')';
+        }
+
+        @Override
+        public String name() {
+            return label;
+        }
+    }
+
+    // Marks pixels whose channel at `shift` is strictly larger than the other two and than the threshold.
+    public static final class DominantChannel implements SegmentationKernel {
+        private final String label;
+        private final int shift;
+        private final int threshold;
+        private final int color;
+        private final int[] aboveThreshold = new int[256]; // channel value -> color or 0
+
+        public DominantChannel(String label, int shift, int threshold, int color) {
+            if (shift != 0 && shift != 8 && shift != 16) {
+                throw new IllegalArgumentException("Channel shift must be 0, 8 or 16: " + shift);
+            }
+            this.label = label;
+            this.shift = shift;
+            this.threshold = threshold;
+            this.color = color & 0xFFFFFF;
+            for (int c = 0; c < 256; c++) {
+                aboveThreshold[c] = (c > threshold) ? this.color : 0;
+            }
+        }
+
+        public int shift() {
+            return shift;
+        }
+
+        public int threshold() {
+            return threshold;
+        }
+
+        public int color() {
+            return color;
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int[] lut = aboveThreshold;
+            // The two other channels, whichever the dominant one is
+            int shiftA = (shift == 16) ? 8 : 16;
+            int shiftB = (shift == 0) ? 8 : 0;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                int c = (p >> shift) & 0xFF;
+                int a = (p >> shiftA) & 0xFF;
+                int b = (p >> shiftB) & 0xFF;
+                // (a - c) >> 31 is all ones exactly when c > a
+                int dominant = ((a - c) >> 31) & ((b - c) >> 31);
+                dst[dstOff + i] = (p & ALPHA) | (dominant & lut[c]);
+            }
+        }
+
+        @Override
+        public void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+            int[] lut = aboveThreshold;
+            int shiftA = (shift == 16) ? 8 : 16;
+            int shiftB = (shift == 0) ? 8 : 0;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                int c = (p >> shift) & 0xFF;
+                int dominant = (((p >> shiftA) & 0xFF) - c) >> 31 & ((((p >> shiftB) & 0xFF) - c) >> 31);
+                int pos = bitOff + i;
+                bits[pos >>> 6] |= (long) (-(dominant & lut[c]) >>> 31) << pos;
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            return new int[]{0x000000, color};
+        }
+
+        @Override
+        public String name() {
+            return label + "(" + threshold + ")";
+        }
+    }
+
+    // Keeps pixels whose r, g and b all fall inside the inclusive ranges, blacks out the rest.
+    public static final class RgbRange implements SegmentationKernel {
+        private final String label;
+        private final int rMin, rMax, gMin, gMax, bMin, bMax;
+        // channel value -> -1 inside the range, 0 outside
+        private final int[] rMask = new int[256], gMask = new int[256], bMask = new int[256];
+
+        public RgbRange(String label, int rMin, int rMax, int gMin, int gMax, int bMin, int bMax) {
+            this.label = label;
+            this.rMin = rMin;
+            this.rMax = rMax;
+            this.gMin = gMin;
+            this.gMax = gMax;
+            this.bMin = bMin;
+            this.bMax = bMax;
+            for (int c = 0; c < 256; c++) {
+                rMask[c] = (c >= rMin && c <= rMax) ? -1 : 0;
+                gMask[c] = (c >= gMin && c <= gMax) ? -1 : 0;
+                bMask[c] = (c >= bMin && c <= bMax) ? -1 : 0;
+            }
+        }
+
+        public int[] bounds() {
+            return new int[]{rMin, rMax, gMin, gMax, bMin, bMax};
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int[] rMask = this.rMask, gMask = this.gMask, bMask = this.bMask;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                int keep = rMask[(p >> 16) & 0xFF] & gMask[(p >> 8) & 0xFF] & bMask[p & 0xFF];
+                dst[dstOff + i] = p & (keep | ALPHA);
+            }
+        }
+
+        @Override
+        public void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+            int[] rMask = this.rMask, gMask = this.gMask, bMask = this.bMask;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                int keep = rMask[(p >> 16) & 0xFF] & gMask[(p >> 8) & 0xFF] & bMask[p & 0xFF];
+                int pos = bitOff + i;
+                bits[pos >>> 6] |= (long) (keep & 1) << pos;
+            }
+        }
+
+        @Override
+        public String name() {
+            return String.format("%s(r %d-%d, g %d-%d, b %d-%d)", label, rMin, rMax, gMin, gMax, bMin, bMax);
+        }
+    }
+
+    // Keeps pixels inside an HSV box, blacks out the rest. Hue is in degrees (0-359) and may
+    // wrap around (hMin > hMax selects reds, for example); saturation and value are 0-255.
+    public static final class HsvRange implements SegmentationKernel {
+        private final String label;
+        private final int hMin, hMax, sMin, sMax, vMin, vMax;
+
+        public HsvRange(String label, int hMin, int hMax, int sMin, int sMax, int vMin, int vMax) {
+            this.label = label;
+            this.hMin = hMin;
+            this.hMax = hMax;
+            this.sMin = sMin;
+            this.sMax = sMax;
+            this.vMin = vMin;
+            this.vMax = vMax;
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            boolean wrap = hMin > hMax;
+            for (int i = 0; i < width; i++) {
+                int p = src[srcOff + i];
+                int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+                int max = Math.max(r, Math.max(g, b));
+                int min = Math.min(r, Math.min(g, b));
+                int delta = max - min;
+                int s = (max == 0) ? 0 : 255 * delta / max;
+                int h;
+                if (delta == 0) {
+                    h = 0;
+                } else if (max == r) {
+                    h = (60 * (g - b) / delta + 360) % 360;
+                } else if (max == g) {
+                    h = 60 * (b - r) / delta + 120;
+                } else {
+                    h = 60 * (r - g) / delta + 240;
+                }
+                boolean hueOk = wrap ? (h >= hMin || h <= hMax) : (h >= hMin && h <= hMax);
+                boolean keep = hueOk && s >= sMin && s <= sMax && max >= vMin && max <= vMax;
+                dst[dstOff + i] = keep ? p : (p & ALPHA);
+            }
+        }
+
+        @Override
+        public String name() {
+            return String.format("%s(h %d-%d, s %d-%d, v %d-%d)", label, hMin, hMax, sMin, sMax, vMin, vMax);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package Project;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Progress of one segmentation run as seen by a LiveImageDisplay. Workers only add to a
+// LongAdder and queue the rectangles they finished; they never repaint or take a lock. The
+// display drains the queue from a Swing timer on the EDT and repaints just those regions.
+public final class SegmentationProgress {
+    // Rows a worker processes between publishing progress, unless a delay is slowing it down
+    static final int PUBLISH_ROWS = 10;
+
+    private final int width;
+    private final int height;
+    private final LongAdder pixelsDone = new LongAdder();
+    private final ConcurrentLinkedQueue<Rectangle> dirty = new ConcurrentLinkedQueue<>();
+    private volatile boolean finished;
+
+    SegmentationProgress(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    // Called by workers: the w x rows block at (x, y) has been written.
+    void rowsDone(int x, int y, int w, int rows) {
+        if (rows <= 0) {
+            return;
+        }
+        pixelsDone.add((long) w * rows);
+        dirty.add(new Rectangle(x, y, w, rows));
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public long pixelsDone() {
+        return pixelsDone.sum();
+    }
+
+    public double fractionDone() {
+        long total = (long) width * height;
+        return (total == 0) ? 1.0 : (double) pixelsDone() / total;
+    }
+
+    // Image-space regions written since the last call, or an empty list. Called on the EDT.
+    List<Rectangle> drainDirty() {
+        List<Rectangle> regions = new ArrayList<>();
+        Rectangle r;
+        while ((r = dirty.poll()) != null) {
+            regions.add(r);
+        }
+        return regions;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,303 @@
+package Project;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// How one fork-join segmentation job was spread over the pool: tasks forked, leaf durations,
+// rows/pixels/busy time per worker, steals and idle time. Filled in by the tasks while the job
+// runs and returned from Parralel_segmenter.segment(); each job also emits JFR events
+// (Project.SegmentationJob, Project.SegmentationLeaf) when a recording has them enabled.
+//
+// Steal count and idle time are pool-wide: with several jobs on one pool they include the
+// other jobs' activity.
+public final class SegmentationTelemetry {
+    // Leaf durations in power-of-two microsecond buckets: bucket 0 is < 2 us, bucket i covers
+    // [2^i, 2^(i+1)) us, the last bucket everything from ~1 s up.
+    public static final int HISTOGRAM_BUCKETS = 21;
+
+    private final String kernelName;
+    private final int width;
+    private final int height;
+    private final int parallelism;
+    private final long stealCountBefore;
+    private final LongAdder tasksForked = new LongAdder();
+    private final AtomicLongArray leafHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final Map<Thread, WorkerStats> workers = new ConcurrentHashMap<>();
+    private final JobEvent event = new JobEvent();
+    private final long startNanos;
+    private volatile long wallNanos = -1;
+    private volatile long stealCount;
+
+    // Work done by one pool thread for this job
+    public static final class WorkerStats {
+        private final String threadName;
+        private final LongAdder leaves = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder pixels = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        WorkerStats(String threadName) {
+            this.threadName = threadName;
+        }
+
+        public String threadName() {
+            return threadName;
+        }
+
+        public long leaves() {
+            return leaves.sum();
+        }
+
+        public long rows() {
+            return rows.sum();
+        }
+
+        public long pixels() {
+            return pixels.sum();
+        }
+
+        public long busyNanos() {
+            return busyNanos.sum();
+        }
+    }
+
+    @Name("Project.SegmentationJob")
+    @Label("Segmentation Job")
+    @Category("Segmentation")
+    @Description("One fork-join segmentation job")
+    @StackTrace(false)
+    static final class JobEvent extends Event {
+        @Label("Kernel")
+        String kernel;
+        @Label("Width")
+        int width;
+        @Label("Height")
+        int height;
+        @Label("Parallelism")
+        int parallelism;
+        @Label("Tasks Forked")
+        long tasksForked;
+        @Label("Leaves")
+        long leaves;
+        @Label("Workers Used")
+        int workersUsed;
+        @Label("Steals")
+        long steals;
+        @Label("Idle Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long idleNanos;
+    }
+
+    @Name("Project.SegmentationLeaf")
+    @Label("Segmentation Leaf")
+    @Category("Segmentation")
+    @Description("One leaf task of a segmentation job")
+    @StackTrace(false)
+    static final class LeafEvent extends Event {
+        @Label("X")
+        int x;
+        @Label("Y")
+        int y;
+        @Label("Width")
+        int width;
+        @Label("Height")
+        int height;
+    }
+
+    SegmentationTelemetry(String kernelName, int width, int height, ForkJoinPool pool) {
+        this.kernelName = kernelName;
+        this.width = width;
+        this.height = height;
+        this.parallelism = pool.getParallelism();
+        this.stealCountBefore = pool.getStealCount();
+        event.begin();
+        this.startNanos = System.nanoTime();
+    }
+
+    void forked(int tasks) {
+        tasksForked.add(tasks);
+    }
+
+    void leafDone(int rows, long pixels, long nanos) {
+        Thread thread = Thread.currentThread();
+        WorkerStats stats = workers.get(thread);
+        if (stats == null) {
+            stats = workers.computeIfAbsent(thread, t -> new WorkerStats(t.getName()));
+        }
+        stats.leaves.increment();
+        stats.rows.add(rows);
+        stats.pixels.add(pixels);
+        stats.busyNanos.add(nanos);
+        leafHistogram.incrementAndGet(bucket(nanos));
+    }
+
+    // Called once the job has completed
+    SegmentationTelemetry finish(ForkJoinPool pool) {
+        wallNanos = System.nanoTime() - startNanos;
+        stealCount = pool.getStealCount() - stealCountBefore;
+        if (event.shouldCommit()) {
+            event.kernel = kernelName;
+            event.width = width;
+            event.height = height;
+            event.parallelism = parallelism;
+            event.tasksForked = tasksForked();
+            event.leaves = leafCount();
+            event.workersUsed = workers.size();
+            event.steals = stealCount;
+            event.idleNanos = idleNanos();
+            event.commit();
+        }
+        return this;
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(1, micros));
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    public String kernelName() {
+        return kernelName;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public long wallNanos() {
+        return wallNanos;
+    }
+
+    // Subtasks created by splitting (the root task is not counted)
+    public long tasksForked() {
+        return tasksForked.sum();
+    }
+
+    public long leafCount() {
+        long count = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            count += leafHistogram.get(i);
+        }
+        return count;
+    }
+
+    public long[] leafHistogram() {
+        long[] counts = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            counts[i] = leafHistogram.get(i);
+        }
+        return counts;
+    }
+
+    // Upper bound, in microseconds, of the histogram bucket holding the p-th percentile leaf
+    public long leafPercentileMicros(double p) {
+        long[] counts = leafHistogram();
+        long target = (long) Math.ceil(p / 100 * leafCount());
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target && seen > 0) {
+                return 2L << i;
+            }
+        }
+        return 0;
+    }
+
+    public long stealCount() {
+        return stealCount;
+    }
+
+    public List<WorkerStats> workers() {
+        List<WorkerStats> list = new ArrayList<>(workers.values());
+        list.sort((a, b) -> a.threadName.compareTo(b.threadName));
+        return Collections.unmodifiableList(list);
+    }
+
+    public long busyNanos() {
+        long busy = 0;
+        for (WorkerStats stats : workers.values()) {
+            busy += stats.busyNanos();
+        }
+        return busy;
+    }
+
+    // Pool capacity (parallelism x wall time) not spent in this job's leaves: waiting, splitting,
+    // joining and scheduling overhead, or threads that never got work.
+    public long idleNanos() {
+        return Math.max(0, parallelism * wallNanos - busyNanos());
+    }
+
+    // Busiest worker's pixels relative to an even share over all pool threads; 1.0 is perfect balance
+    public double imbalance() {
+        long max = 0;
+        long total = 0;
+        for (WorkerStats stats : workers.values()) {
+            long pixels = stats.pixels();
+            max = Math.max(max, pixels);
+            total += pixels;
+        }
+        return (total == 0) ? 1.0 : max / ((double) total / parallelism);
+    }
+
+    // Non-empty histogram buckets as "label -> count", in order
+    public Map<String, Long> leafHistogramLabels() {
+        Map<String, Long> labels = new LinkedHashMap<>();
+        long[] counts = leafHistogram();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            String from = (i == 0) ? "0" : formatMicros(1L << i);
+            String to = (i == HISTOGRAM_BUCKETS - 1) ? "" : formatMicros(2L << i);
+            labels.put(from + "-" + to, counts[i]);
+        }
+        return labels;
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros >= 1_000_000) {
+            return (micros / 1_000_000) + "s";
+        }
+        return (micros >= 1000) ? (micros / 1000) + "ms" : micros + "us";
+    }
+
+    // Multi-line summary for the GUI's metrics area
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        double wallMs = wallNanos / 1e6;
+        sb.append(String.format(Locale.ROOT, "Fork-join (%dx%d, %s): %d tasks forked, %d leaves, %d steals, %d of %d workers used%n",
+                width, height, kernelName, tasksForked(), leafCount(), stealCount, workers.size(), parallelism));
+        sb.append(String.format(Locale.ROOT, "Wall %.2f ms, busy %.2f ms, idle %.2f ms (%.1f%% of pool time), imbalance %.2fx%n",
+                wallMs, busyNanos() / 1e6, idleNanos() / 1e6,
+                wallNanos > 0 ? 100.0 * idleNanos() / (parallelism * wallNanos) : 0.0, imbalance()));
+        sb.append(String.format(Locale.ROOT, "Leaf time: p50 <= %dus, p90 <= %dus, p99 <= %dus; histogram %s%n",
+                leafPercentileMicros(50), leafPercentileMicros(90), leafPercentileMicros(99), leafHistogramLabels()));
+        for (WorkerStats stats : workers()) {
+            sb.append(String.format(Locale.ROOT, "  %s: %d leaves, %d rows, %d pixels, busy %.2f ms%n",
+                    stats.threadName(), stats.leaves(), stats.rows(), stats.pixels(), stats.busyNanos() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "SegmentationTelemetry[%s, %d tasks, %d leaves, %d steals, wall %.2f ms, idle %.2f ms]",
+                kernelName, tasksForked(), leafCount(), stealCount, wallNanos / 1e6, idleNanos() / 1e6);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,244 @@
+package Project;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Vector;
+
+// Out-of-core segmentation for images too large to hold in memory. The input is read in
+// horizontal strips through ImageReadParam.setSourceRegion, each strip is segmented on the
+// fork-join engine, and strips are written out as they complete, so peak memory is a couple
+// of strips regardless of image size.
+//
+// Output goes through ImageWriter.replacePixels when the writer supports it (TIFF). Other
+// writers (PNG, BMP) are fed a RenderedImage that produces strips on demand as the writer
+// pulls rows. Formats whose writers request the whole raster at once (JPEG) lose the bound.
+// Readers seek directly to strips for TIFF and BMP; compressed formats such as PNG decode
+// from the top for every strip, which costs time but not memory.
+public class StreamingSegmenter {
+    public static final int DEFAULT_STRIP_ROWS = 256;
+
+    public static void segment(File inputFile, File outputFile, SegmentationKernel kernel,
+                               Parralel_segmenter engine, int stripRows) throws IOException {
+        if (stripRows <= 0) {
+            throw new IllegalArgumentException("Strip height must be positive: " + stripRows);
+        }
+        String format = formatOf(outputFile);
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(inputFile)) {
+            if (iis == null) {
+                throw new IOException("Cannot open " + inputFile);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for " + inputFile);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, false, true);
+                StripSource source = new StripSource(reader, kernel, engine, stripRows);
+                write(source, outputFile, format);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static void write(StripSource source, File outputFile, String format) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format " + format);
+        }
+        ImageWriter writer = writers.next();
+        if (outputFile.exists() && !outputFile.delete()) {
+            throw new IOException("Cannot overwrite " + outputFile);
+        }
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(outputFile)) {
+            writer.setOutput(ios);
+            if (writer.canWriteEmpty()) {
+                writeByReplacingPixels(source, writer);
+            } else {
+                writer.write(source.asRenderedImage());
+            }
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void writeByReplacingPixels(StripSource source, ImageWriter writer) throws IOException {
+        BufferedImage first = source.strip(0);
+        ImageTypeSpecifier spec = new ImageTypeSpecifier(first);
+        writer.prepareWriteEmpty(null, spec, source.width, source.height, null, null, null);
+        if (!writer.canReplacePixels(0)) {
+            throw new IOException("Writer " + writer.getOriginatingProvider().getDescription(null)
+                    + " cannot replace pixels in an empty image");
+        }
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        for (int index = 0; index < source.stripCount; index++) {
+            BufferedImage strip = source.strip(index);
+            int y = index * source.stripRows;
+            writer.prepareReplacePixels(0, new Rectangle(0, y, source.width, strip.getHeight()));
+            param.setDestinationOffset(new Point(0, y));
+            writer.replacePixels(strip, param);
+            writer.endReplacePixels();
+        }
+        writer.endWriteEmpty();
+    }
+
+    private static String formatOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1) {
+            throw new IllegalArgumentException("Output file needs an extension to pick a format: " + file);
+        }
+        String ext = name.substring(dot + 1).toLowerCase();
+        return ext.equals("tif") ? "tiff" : ext.equals("jpg") ? "jpeg" : ext;
+    }
+
+    // Reads and segments one strip at a time, keeping only the most recent one.
+    private static final class StripSource {
+        private final ImageReader reader;
+        private final SegmentationKernel kernel;
+        private final Parralel_segmenter engine;
+        private final int width;
+        private final int height;
+        private final int stripRows;
+        private final int stripCount;
+        private final ImageReadParam readParam;
+
+        private int cachedIndex = -1;
+        private BufferedImage cachedStrip;
+        private BufferedImage spareStrip; // full-height output buffer reused between strips
+
+        StripSource(ImageReader reader, SegmentationKernel kernel, Parralel_segmenter engine, int stripRows) throws IOException {
+            this.reader = reader;
+            this.kernel = kernel;
+            this.engine = engine;
+            this.width = reader.getWidth(0);
+            this.height = reader.getHeight(0);
+            this.stripRows = Math.min(stripRows, height);
+            this.stripCount = (height + this.stripRows - 1) / this.stripRows;
+            this.readParam = reader.getDefaultReadParam();
+        }
+
+        BufferedImage strip(int index) throws IOException {
+            if (index == cachedIndex) {
+                return cachedStrip;
+            }
+            int y = index * stripRows;
+            int rows = Math.min(stripRows, height - y);
+            readParam.setSourceRegion(new Rectangle(0, y, width, rows));
+            BufferedImage input = reader.read(0, readParam);
+
+            BufferedImage output = spareStrip;
+            if (output == null || output.getHeight() != rows || output.getType() != input.getType()
+                    || !output.getColorModel().equals(input.getColorModel())) {
+                ColorModel cm = input.getColorModel();
+                WritableRaster raster = cm.createCompatibleWritableRaster(width, rows);
+                output = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+            }
+            engine.segment(input, output, kernel, null, 0, Decomposition.adaptive());
+
+            // The previous strip's buffer becomes the spare for the next full-height strip
+            spareStrip = (cachedStrip != null && cachedStrip.getHeight() == stripRows) ? cachedStrip : null;
+            cachedIndex = index;
+            cachedStrip = output;
+            return output;
+        }
+
+        RenderedImage asRenderedImage() throws IOException {
+            return new StripImage(this, strip(0));
+        }
+    }
+
+    // A RenderedImage whose tiles are the segmented strips, produced lazily as the writer asks for rows.
+    private static final class StripImage implements RenderedImage {
+        private final StripSource source;
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+
+        StripImage(StripSource source, BufferedImage first) {
+            this.source = source;
+            this.colorModel = first.getColorModel();
+            this.sampleModel = first.getSampleModel().createCompatibleSampleModel(source.width, source.stripRows);
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            Raster strip = stripAt(tileY).getRaster();
+            return strip.createTranslatedChild(0, tileY * source.stripRows);
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            WritableRaster result = colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+                    .createWritableTranslatedChild(rect.x, rect.y);
+            copyData(result);
+            return result;
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, source.width, source.height));
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            if (raster == null) {
+                raster = colorModel.createCompatibleWritableRaster(source.width, source.height);
+            }
+            Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, source.width, source.height));
+            int first = bounds.y / source.stripRows;
+            int last = (bounds.y + bounds.height - 1) / source.stripRows;
+            for (int index = first; index <= last && !bounds.isEmpty(); index++) {
+                Raster tile = getTile(0, index);
+                Rectangle overlap = tile.getBounds().intersection(bounds);
+                raster.setDataElements(overlap.x, overlap.y,
+                        tile.createChild(overlap.x, overlap.y, overlap.width, overlap.height, 0, 0, null));
+            }
+            return raster;
+        }
+
+        private BufferedImage stripAt(int index) {
+            try {
+                return source.strip(index);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read strip " + index, e);
+            }
+        }
+
+        @Override public Vector<RenderedImage> getSources() { return null; }
+        @Override public Object getProperty(String name) { return java.awt.Image.UndefinedProperty; }
+        @Override public String[] getPropertyNames() { return null; }
+        @Override public ColorModel getColorModel() { return colorModel; }
+        @Override public SampleModel getSampleModel() { return sampleModel; }
+        @Override public int getWidth() { return source.width; }
+        @Override public int getHeight() { return source.height; }
+        @Override public int getMinX() { return 0; }
+        @Override public int getMinY() { return 0; }
+        @Override public int getNumXTiles() { return 1; }
+        @Override public int getNumYTiles() { return source.stripCount; }
+        @Override public int getMinTileX() { return 0; }
+        @Override public int getMinTileY() { return 0; }
+        @Override public int getTileWidth() { return source.width; }
+        @Override public int getTileHeight() { return source.stripRows; }
+        @Override public int getTileGridXOffset() { return 0; }
+        @Override public int getTileGridYOffset() { return 0; }
+    }
+}
\ No newline at end of file
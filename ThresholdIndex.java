@@ -0,0 +1,237 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// Interactive re-segmentation for kernels whose result depends on the threshold only through
+// a per-pixel key: the channel average for Grayscale, the dominant channel's value for
+// DominantChannel. The keys are computed once and the pixel positions counting-sorted by key,
+// so moving the threshold from t1 to t2 rewrites just the pixels whose key lies between the
+// two, and the cost of a slider step is proportional to the pixels that change.
+//
+// The index owns its output image (INT_ARGB) and is not thread-safe; the GUI drives it from
+// one background worker at a time.
+public final class ThresholdIndex {
+    private static final int ALPHA = 0xFF000000;
+    private static final int KEYS = 256;
+    // Rows per dirty band reported to a LiveImageDisplay
+    private static final int BAND_ROWS = 32;
+
+    private final int width;
+    private final int height;
+    private final boolean grayscale;
+    private final int foreground;      // rgb written where key >= bound, without alpha
+    private final int[] bucketStart;   // positions of key k are order[bucketStart[k] .. bucketStart[k + 1])
+    private final int[] order;         // y * width + x, sorted by key; pixels that can never be foreground are left out
+    private final BufferedImage output;
+    private final int[] outData;
+    private int threshold;
+    private int bound;                 // smallest key that is foreground at the current threshold
+    // One progress for all threshold steps shown on a panel, so the next step does not drop the
+    // regions of the last one that the panel has not drained yet; see endProgress()
+    private SegmentationProgress progress;
+    private LiveImageDisplay progressPanel;
+    private boolean progressEnded;     // set by endProgress(): steps report nothing until beginProgress()
+
+    private ThresholdIndex(int width, int height, SegmentationKernel kernel, int[] bucketStart, int[] order) {
+        this.width = width;
+        this.height = height;
+        this.grayscale = kernel instanceof SegmentationKernels.Grayscale;
+        this.foreground = grayscale ? 0xFFFFFF : ((SegmentationKernels.DominantChannel) kernel).color();
+        this.bucketStart = bucketStart;
+        this.order = order;
+        this.output = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.outData = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+    }
+
+    // True for the kernels an index can be built for; other kernels do not use a threshold
+    // this way (the custom RGB range ignores it) and need a full run.
+    public static boolean supports(SegmentationKernel kernel) {
+        return kernel instanceof SegmentationKernels.Grayscale || kernel instanceof SegmentationKernels.DominantChannel;
+    }
+
+    // Keys the input for the kernel's type and segments it at the kernel's threshold.
+    public static ThresholdIndex build(BufferedImage input, SegmentationKernel kernel) {
+        if (!supports(kernel)) {
+            throw new IllegalArgumentException("No threshold index for kernel " + kernel.name());
+        }
+        PixelRows in = new PixelRows(input);
+        int width = in.width();
+        int height = in.height();
+        int[] row = new int[width];
+        int[] keys = new int[width];
+
+        // Pass 1: bucket sizes
+        int[] bucketStart = new int[KEYS + 1];
+        for (int y = 0; y < height; y++) {
+            in.read(0, y, width, row);
+            keyRow(kernel, row, keys, width);
+            for (int x = 0; x < width; x++) {
+                if (keys[x] >= 0) {
+                    bucketStart[keys[x] + 1]++;
+                }
+            }
+        }
+        for (int k = 0; k < KEYS; k++) {
+            bucketStart[k + 1] += bucketStart[k];
+        }
+
+        // Pass 2: scatter positions; the output starts as alpha only (every pixel background)
+        ThresholdIndex index = new ThresholdIndex(width, height, kernel, bucketStart, new int[bucketStart[KEYS]]);
+        int[] next = Arrays.copyOf(bucketStart, KEYS);
+        for (int y = 0; y < height; y++) {
+            in.read(0, y, width, row);
+            keyRow(kernel, row, keys, width);
+            int base = y * width;
+            for (int x = 0; x < width; x++) {
+                index.outData[base + x] = row[x] & ALPHA;
+                if (keys[x] >= 0) {
+                    index.order[next[keys[x]]++] = base + x;
+                }
+            }
+        }
+        index.bound = KEYS;
+        index.setThreshold(threshold(kernel), null);
+        return index;
+    }
+
+    // Per-pixel key: the channel average for grayscale; the channel value where it is
+    // strictly dominant for a dominant-channel kernel, -1 (never foreground) elsewhere.
+    // Also used for the key histograms behind automatic thresholds (AutoThreshold).
+    static void keyRow(SegmentationKernel kernel, int[] row, int[] keys, int width) {
+        if (kernel instanceof SegmentationKernels.DominantChannel dominant) {
+            int shift = dominant.shift();
+            int shiftA = (shift == 16) ? 8 : 16;
+            int shiftB = (shift == 0) ? 8 : 0;
+            for (int x = 0; x < width; x++) {
+                int p = row[x];
+                int c = (p >> shift) & 0xFF;
+                boolean isDominant = c > ((p >> shiftA) & 0xFF) && c > ((p >> shiftB) & 0xFF);
+                keys[x] = isDominant ? c : -1;
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                int p = row[x];
+                keys[x] = (((p >> 16) & 0xFF) + ((p >> 8) & 0xFF) + (p & 0xFF)) / 3;
+            }
+        }
+    }
+
+    private static int threshold(SegmentationKernel kernel) {
+        return (kernel instanceof SegmentationKernels.Grayscale gray)
+                ? gray.threshold() : ((SegmentationKernels.DominantChannel) kernel).threshold();
+    }
+
+    // Grayscale keeps key >= threshold, a dominant channel key > threshold
+    private int boundFor(int threshold) {
+        long bound = grayscale ? threshold : (long) threshold + 1;
+        return (int) Math.max(0, Math.min(KEYS, bound));
+    }
+
+    public BufferedImage output() {
+        return output;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    // Moves the threshold, rewriting only the pixels whose key lies between the old and the new
+    // bound, and returns how many pixels changed. With a panel showing output(), the changed
+    // rows are reported to it band by band, through one progress from beginProgress() until
+    // endProgress().
+    public int setThreshold(int newThreshold, LiveImageDisplay panel) {
+        int newBound = boundFor(newThreshold);
+        threshold = newThreshold;
+        if (newBound == bound) {
+            return 0;
+        }
+        // Keys in [newBound, bound) turn foreground, keys in [bound, newBound) turn background
+        int value = (newBound < bound) ? foreground : 0;
+        int from = bucketStart[Math.min(bound, newBound)];
+        int to = bucketStart[Math.max(bound, newBound)];
+        bound = newBound;
+
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        int[] minX = null;
+        int[] maxX = null;
+        if (panel != null) {
+            minX = new int[bands];
+            maxX = new int[bands];
+            Arrays.fill(minX, Integer.MAX_VALUE);
+            Arrays.fill(maxX, -1);
+        }
+        int[] out = outData;
+        for (int i = from; i < to; i++) {
+            int pos = order[i];
+            out[pos] = (out[pos] & ALPHA) | value;
+            if (minX != null) {
+                int band = pos / width / BAND_ROWS;
+                int x = pos % width;
+                minX[band] = Math.min(minX[band], x);
+                maxX[band] = Math.max(maxX[band], x);
+            }
+        }
+
+        SegmentationProgress progress = (panel == null) ? null : progressFor(panel);
+        if (progress != null) {
+            for (int band = 0; band < bands; band++) {
+                if (maxX[band] >= 0) {
+                    progress.rowsDone(minX[band], band * BAND_ROWS, maxX[band] - minX[band] + 1,
+                            Math.min(BAND_ROWS, height - band * BAND_ROWS));
+                }
+            }
+        }
+        return to - from;
+    }
+
+    // The session's progress on panel, or null once the session has ended
+    private synchronized SegmentationProgress progressFor(LiveImageDisplay panel) {
+        if (progressEnded) {
+            return null;
+        }
+        if (progress == null || progressPanel != panel) {
+            finishProgress();
+            progress = panel.startProgress();
+            progressPanel = panel;
+        }
+        return progress;
+    }
+
+    // Starts an interactive session: steps report to their panel again after endProgress()
+    public synchronized void beginProgress() {
+        progressEnded = false;
+    }
+
+    // Ends the interactive session on the panel: it repaints what is still pending and stops
+    // polling. May be called from any thread, also while a step is running; steps that finish
+    // after it still update output() but no longer report to the panel, which may be showing
+    // another image by then.
+    public synchronized void endProgress() {
+        progressEnded = true;
+        finishProgress();
+    }
+
+    private void finishProgress() {
+        if (progress != null) {
+            progress.finish();
+            progress = null;
+            progressPanel = null;
+        }
+    }
+
+    // Pixels per key; the bucket sizes are the image's key histogram
+    public long[] histogram() {
+        long[] histogram = new long[KEYS];
+        for (int k = 0; k < KEYS; k++) {
+            histogram[k] = bucketStart[k + 1] - bucketStart[k];
+        }
+        return histogram;
+    }
+
+    // Bytes held by the index itself (positions and bucket table), not counting the output
+    public long indexBytes() {
+        return 4L * order.length + 4L * bucketStart.length;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,262 @@
+package Project;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.awt.image.BufferedImage;
+
+// SIMD engine: the built-in kernels re-implemented on jdk.incubator.vector so each
+// instruction segments a full vector of packed ARGB pixels (8 lanes on AVX2, 16 on AVX-512).
+// Row splitting is still done by Parralel_segmenter's fork-join tasks, so SIMD and cores combine.
+// Needs --add-modules jdk.incubator.vector at compile and run time; without the module, or for
+// kernels that have no vector form, the scalar kernel is used unchanged.
+public class VectorSegmenter {
+    private static final int ALPHA = 0xFF000000;
+
+    public static boolean isAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    public static SegmentationTelemetry segment(BufferedImage input, BufferedImage output, int threshold,
+                                                String type, int numThreads, LiveImageDisplay panel, int delayMs) {
+        return segment(input, output, threshold, type, numThreads, panel, delayMs, Decomposition.adaptive());
+    }
+
+    public static SegmentationTelemetry segment(BufferedImage input, BufferedImage output, int threshold, String type,
+                                                int numThreads, LiveImageDisplay panel, int delayMs,
+                                                Decomposition decomposition) {
+        SegmentationKernel kernel = vectorize(SegmentationKernels.forType(type, threshold));
+        return Parralel_segmenter.segment(input, output, kernel, numThreads, panel, delayMs, decomposition);
+    }
+
+    // Returns a SIMD version of the kernel, or the kernel itself when none exists.
+    public static SegmentationKernel vectorize(SegmentationKernel kernel) {
+        if (!isAvailable()) {
+            return kernel;
+        }
+        if (kernel instanceof SegmentationKernels.Grayscale) {
+            return new GrayscaleVector((SegmentationKernels.Grayscale) kernel);
+        }
+        if (kernel instanceof SegmentationKernels.DominantChannel) {
+            return new DominantChannelVector((SegmentationKernels.DominantChannel) kernel);
+        }
+        if (kernel instanceof SegmentationKernels.RgbRange) {
+            return new RgbRangeVector((SegmentationKernels.RgbRange) kernel);
+        }
+        return kernel;
+    }
+
+    // Ors the lane mask into the mask words; pos is a multiple of the lane count, so the
+    // lanes never straddle two longs.
+    private static void storeMask(long[] bits, int pos, VectorMask<Integer> lanes) {
+        bits[pos >>> 6] |= lanes.toLong() << pos;
+    }
+
+    private static final class GrayscaleVector implements SegmentationKernel {
+        private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+        private final SegmentationKernels.Grayscale scalar;
+        private final int sumThreshold;
+
+        GrayscaleVector(SegmentationKernels.Grayscale scalar) {
+            this.scalar = scalar;
+            // (r + g + b) / 3 < t  <=>  r + g + b < 3t for non-negative sums
+            this.sumThreshold = 3 * scalar.threshold();
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int bound = SPECIES.loopBound(width);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+                IntVector sum = p.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                        .add(p.lanewise(VectorOperators.LSHR, 8).and(0xFF))
+                        .add(p.and(0xFF));
+                VectorMask<Integer> white = sum.compare(VectorOperators.GE, sumThreshold);
+                IntVector alpha = p.and(ALPHA);
+                alpha.blend(alpha.or(0xFFFFFF), white).intoArray(dst, dstOff + i);
+            }
+            if (i < width) {
+                scalar.segmentRow(src, srcOff + i, dst, dstOff + i, width - i);
+            }
+        }
+
+        @Override
+        public void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+            if ((bitOff & (SPECIES.length() - 1)) != 0) {
+                scalar.maskRow(src, srcOff, bits, bitOff, width, scratch);
+                return;
+            }
+            int bound = SPECIES.loopBound(width);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+                IntVector sum = p.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                        .add(p.lanewise(VectorOperators.LSHR, 8).and(0xFF))
+                        .add(p.and(0xFF));
+                VectorMask<Integer> white = sum.compare(VectorOperators.GE, sumThreshold);
+                storeMask(bits, bitOff + i, white);
+            }
+            if (i < width) {
+                scalar.maskRow(src, srcOff + i, bits, bitOff + i, width - i, scratch);
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            return scalar.outputPalette();
+        }
+
+        @Override
+        public String name() {
+            return scalar.name() + " [SIMD]";
+        }
+    }
+
+    private static final class DominantChannelVector implements SegmentationKernel {
+        private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+        private final SegmentationKernels.DominantChannel scalar;
+        private final int shift, shiftA, shiftB;
+        private final int threshold;
+        private final int color;
+
+        DominantChannelVector(SegmentationKernels.DominantChannel scalar) {
+            this.scalar = scalar;
+            this.shift = scalar.shift();
+            this.shiftA = (shift == 16) ? 8 : 16;
+            this.shiftB = (shift == 0) ? 8 : 0;
+            this.threshold = scalar.threshold();
+            this.color = scalar.color();
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int bound = SPECIES.loopBound(width);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+                IntVector c = p.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+                IntVector a = p.lanewise(VectorOperators.LSHR, shiftA).and(0xFF);
+                IntVector b = p.lanewise(VectorOperators.LSHR, shiftB).and(0xFF);
+                VectorMask<Integer> hit = c.compare(VectorOperators.GT, a)
+                        .and(c.compare(VectorOperators.GT, b))
+                        .and(c.compare(VectorOperators.GT, threshold));
+                IntVector alpha = p.and(ALPHA);
+                alpha.blend(alpha.or(color), hit).intoArray(dst, dstOff + i);
+            }
+            if (i < width) {
+                scalar.segmentRow(src, srcOff + i, dst, dstOff + i, width - i);
+            }
+        }
+
+        @Override
+        public void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+            if ((bitOff & (SPECIES.length() - 1)) != 0) {
+                scalar.maskRow(src, srcOff, bits, bitOff, width, scratch);
+                return;
+            }
+            int bound = SPECIES.loopBound(width);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+                IntVector c = p.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+                IntVector a = p.lanewise(VectorOperators.LSHR, shiftA).and(0xFF);
+                IntVector b = p.lanewise(VectorOperators.LSHR, shiftB).and(0xFF);
+                VectorMask<Integer> hit = c.compare(VectorOperators.GT, a)
+                        .and(c.compare(VectorOperators.GT, b))
+                        .and(c.compare(VectorOperators.GT, threshold));
+                storeMask(bits, bitOff + i, hit);
+            }
+            if (i < width) {
+                scalar.maskRow(src, srcOff + i, bits, bitOff + i, width - i, scratch);
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            return scalar.outputPalette();
+        }
+
+        @Override
+        public String name() {
+            return scalar.name() + " [SIMD]";
+        }
+    }
+
+    private static final class RgbRangeVector implements SegmentationKernel {
+        private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+        private final SegmentationKernels.RgbRange scalar;
+        private final int rMin, rMax, gMin, gMax, bMin, bMax;
+
+        RgbRangeVector(SegmentationKernels.RgbRange scalar) {
+            this.scalar = scalar;
+            int[] bounds = scalar.bounds();
+            this.rMin = bounds[0];
+            this.rMax = bounds[1];
+            this.gMin = bounds[2];
+            this.gMax = bounds[3];
+            this.bMin = bounds[4];
+            this.bMax = bounds[5];
+        }
+
+        @Override
+        public void segmentRow(int[] src, int srcOff, int[] dst, int dstOff, int width) {
+            int bound = SPECIES.loopBound(width);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+                IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+                IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+                IntVector b = p.and(0xFF);
+                VectorMask<Integer> keep = r.compare(VectorOperators.GE, rMin)
+                        .and(r.compare(VectorOperators.LE, rMax))
+                        .and(g.compare(VectorOperators.GE, gMin))
+                        .and(g.compare(VectorOperators.LE, gMax))
+                        .and(b.compare(VectorOperators.GE, bMin))
+                        .and(b.compare(VectorOperators.LE, bMax));
+                p.and(ALPHA).blend(p, keep).intoArray(dst, dstOff + i);
+            }
+            if (i < width) {
+                scalar.segmentRow(src, srcOff + i, dst, dstOff + i, width - i);
+            }
+        }
+
+        @Override
+        public void maskRow(int[] src, int srcOff, long[] bits, int bitOff, int width, int[] scratch) {
+            if ((bitOff & (SPECIES.length() - 1)) != 0) {
+                scalar.maskRow(src, srcOff, bits, bitOff, width, scratch);
+                return;
+            }
+            int bound = SPECIES.loopBound(width);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+                IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+                IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+                IntVector b = p.and(0xFF);
+                VectorMask<Integer> keep = r.compare(VectorOperators.GE, rMin)
+                        .and(r.compare(VectorOperators.LE, rMax))
+                        .and(g.compare(VectorOperators.GE, gMin))
+                        .and(g.compare(VectorOperators.LE, gMax))
+                        .and(b.compare(VectorOperators.GE, bMin))
+                        .and(b.compare(VectorOperators.LE, bMax));
+                storeMask(bits, bitOff + i, keep);
+            }
+            if (i < width) {
+                scalar.maskRow(src, srcOff + i, bits, bitOff + i, width - i, scratch);
+            }
+        }
+
+        @Override
+        public int[] outputPalette() {
+            return scalar.outputPalette();
+        }
+
+        @Override
+        public String name() {
+            return scalar.name() + " [SIMD]";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package Project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Single-row kernel throughput, free of raster access and scheduling. One op is one row.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class KernelBenchmark {
+    @Param({"grayscale", "red", "green", "custom"})
+    public String segmentation;
+
+    @Param({"false", "true"})
+    public boolean simd;
+
+    @Param({"4096"})
+    public int width;
+
+    private SegmentationKernel kernel;
+    private int[] src;
+    private int[] dst;
+    private long[] bits;
+    private int[] scratch;
+
+    @Setup
+    public void setup() {
+        SegmentationKernel scalar = SegmentationKernels.forType(segmentation, 128);
+        kernel = simd ? VectorSegmenter.vectorize(scalar) : scalar;
+        Random random = new Random(42);
+        src = new int[width];
+        for (int i = 0; i < width; i++) {
+            src[i] = random.nextInt() | 0xFF000000;
+        }
+        dst = new int[width];
+        bits = new long[(width + 63) >>> 6];
+        scratch = new int[width];
+    }
+
+    @Benchmark
+    public int[] segmentRow() {
+        kernel.segmentRow(src, 0, dst, 0, width);
+        return dst;
+    }
+
+    @Benchmark
+    public long[] maskRow() {
+        kernel.maskRow(src, 0, bits, 0, width, scratch);
+        return bits;
+    }
+}
@@ -0,0 +1,72 @@
+package Project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+// Whole-image Parralel_segmenter runs. The engine's pool is created and warmed up in setup,
+// so the score is steady-state segmentation time only. "max" threads means all cores.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+    @Param({"1", "10", "40", "100"})
+    public double megapixels;
+
+    @Param({"INT_ARGB", "INT_RGB", "3BYTE_BGR", "4BYTE_ABGR"})
+    public String rasterType;
+
+    @Param({"grayscale", "red", "green", "custom"})
+    public String segmentation;
+
+    @Param({"1", "2", "4", "8", "max"})
+    public String threads;
+
+    @Param({"forkjoin", "simd"})
+    public String engine;
+
+    @Param({"rows", "tiles"})
+    public String decomposition;
+
+    private BufferedImage input;
+    private BufferedImage output;
+    private SegmentationKernel kernel;
+    private Decomposition split;
+    private Parralel_segmenter segmenter;
+
+    @Setup
+    public void setup() {
+        input = SyntheticImages.create(megapixels, rasterType, 42);
+        output = SyntheticImages.compatibleOutput(input);
+        SegmentationKernel scalar = SegmentationKernels.forType(segmentation, 128);
+        kernel = engine.equals("simd") ? VectorSegmenter.vectorize(scalar) : scalar;
+        split = decomposition.equals("tiles") ? Decomposition.autoTiles() : Decomposition.rows();
+        segmenter = new Parralel_segmenter(SyntheticImages.threads(threads)).start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        segmenter.close();
+    }
+
+    @Benchmark
+    public BufferedImage segment() {
+        segmenter.segment(input, output, kernel, null, 0, split);
+        return output;
+    }
+}
@@ -0,0 +1,75 @@
+package Project;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs ParallelBenchmark with the GC profiler and prints ops/s, allocation rate, speed-up and
+// parallel efficiency per thread count, relative to the smallest thread count run of the same
+// configuration (normalised per thread when that is not 1).
+//
+// Usage: java -cp benchmarks.jar Project.ScalingReport [param=v1,v2 ...]
+//        e.g. megapixels=10 rasterType=INT_ARGB segmentation=grayscale
+public class ScalingReport {
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .include(ParallelBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected param=v1,v2 but got " + arg);
+            }
+            builder.param(arg.substring(0, eq), arg.substring(eq + 1).split(","));
+        }
+        Collection<RunResult> results = new Runner(builder.build()).run();
+
+        // Group runs that differ only in thread count
+        Map<String, List<RunResult>> groups = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            groups.computeIfAbsent(configKey(result), k -> new ArrayList<>()).add(result);
+        }
+
+        System.out.println();
+        System.out.printf("%-60s %7s %12s %14s %9s %11s%n", "configuration", "threads", "ops/s", "alloc MB/s", "speed-up", "efficiency");
+        for (Map.Entry<String, List<RunResult>> group : groups.entrySet()) {
+            List<RunResult> runs = group.getValue();
+            runs.sort(Comparator.comparingInt(ScalingReport::threadCount));
+            double baseline = runs.get(0).getPrimaryResult().getScore() / threadCount(runs.get(0));
+            for (RunResult run : runs) {
+                int threads = threadCount(run);
+                double score = run.getPrimaryResult().getScore();
+                double speedup = score / baseline;
+                Result<?> alloc = run.getSecondaryResults().get("gc.alloc.rate");
+                System.out.printf("%-60s %7d %12.3f %14.1f %8.2fx %10.1f%%%n", group.getKey(), threads, score,
+                        alloc == null ? Double.NaN : alloc.getScore(), speedup, 100.0 * speedup / threads);
+            }
+        }
+    }
+
+    private static String configKey(RunResult result) {
+        StringBuilder key = new StringBuilder();
+        for (String name : result.getParams().getParamsKeys()) {
+            if (!name.equals("threads")) {
+                key.append(key.length() == 0 ? "" : " ").append(result.getParams().getParam(name));
+            }
+        }
+        return key.toString();
+    }
+
+    private static int threadCount(RunResult result) {
+        return SyntheticImages.threads(result.getParams().getParam("threads"));
+    }
+}
@@ -0,0 +1,51 @@
+package Project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+// Whole-image SequentialSegmenter.segment, the baseline for ParallelBenchmark's speed-ups.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class SequentialBenchmark {
+    @Param({"1", "10", "40", "100"})
+    public double megapixels;
+
+    @Param({"INT_ARGB", "INT_RGB", "3BYTE_BGR", "4BYTE_ABGR"})
+    public String rasterType;
+
+    @Param({"grayscale", "red", "green", "custom"})
+    public String segmentation;
+
+    private BufferedImage input;
+    private BufferedImage output;
+    private SegmentationKernel kernel;
+
+    @Setup
+    public void setup() {
+        input = SyntheticImages.create(megapixels, rasterType, 42);
+        output = SyntheticImages.compatibleOutput(input);
+        kernel = SegmentationKernels.forType(segmentation, 128);
+    }
+
+    @Benchmark
+    public BufferedImage segment() {
+        SequentialSegmenter.segment(input, output, kernel, 0, null);
+        return output;
+    }
+}
@@ -0,0 +1,51 @@
+package Project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.Random;
+
+// Deterministic test images for the benchmarks: 4:3 frames of uniform noise, the worst case
+// for branchy kernels, in any of the raster layouts the engines specialise on.
+final class SyntheticImages {
+
+    private SyntheticImages() {
+    }
+
+    static BufferedImage create(double megapixels, String rasterType, long seed) {
+        long pixels = Math.round(megapixels * 1_000_000);
+        int width = (int) Math.round(Math.sqrt(pixels * 4.0 / 3.0));
+        int height = (int) Math.max(1, pixels / width);
+
+        BufferedImage image = new BufferedImage(width, height, imageType(rasterType));
+        Random random = new Random(seed);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = random.nextInt() | 0xFF000000;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    static BufferedImage compatibleOutput(BufferedImage input) {
+        ColorModel cm = input.getColorModel();
+        return new BufferedImage(cm, cm.createCompatibleWritableRaster(input.getWidth(), input.getHeight()),
+                cm.isAlphaPremultiplied(), null);
+    }
+
+    static int imageType(String rasterType) {
+        return switch (rasterType) {
+            case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+            case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            case "4BYTE_ABGR" -> BufferedImage.TYPE_4BYTE_ABGR;
+            case "USHORT_565_RGB" -> BufferedImage.TYPE_USHORT_565_RGB; // generic fallback path
+            default -> throw new IllegalArgumentException("Unknown raster type: " + rasterType);
+        };
+    }
+
+    static int threads(String threads) {
+        return threads.equals("max") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+    }
+}